@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CacheStatistics;
+import ru.yandex.practicum.filmorate.storage.cache.CachedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.CachedUserStorage;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/cache")
+@ConditionalOnProperty(name = "filmorate.read-replica.enabled", havingValue = "false", matchIfMissing = true)
+public class CacheController {
+    private final CachedFilmStorage filmStorage;
+    private final CachedUserStorage userStorage;
+
+    @Autowired
+    public CacheController(CachedFilmStorage filmStorage, CachedUserStorage userStorage) {
+        this.filmStorage = filmStorage;
+        this.userStorage = userStorage;
+    }
+
+    @GetMapping("/stats")
+    public Map<String, CacheStatistics> getStatistics() {
+        return Map.of("films", filmStorage.getStatistics(),
+                "users", userStorage.getStatistics());
+    }
+}
@@ -1,5 +1,9 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -8,24 +12,42 @@ import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
+//Каждая ветка считает свои ошибки в filmorate.errors с тегом branch
+@Slf4j
 @RestControllerAdvice
 public class ErrorHandler {
+    private static final String ERRORS_COUNTER = "filmorate.errors";
+
+    private final Counter validationErrors;
+    private final Counter notFoundErrors;
+    private final Counter unexpectedErrors;
+
+    @Autowired
+    public ErrorHandler(MeterRegistry registry) {
+        this.validationErrors = Counter.builder(ERRORS_COUNTER).tag("branch", "validation").register(registry);
+        this.notFoundErrors = Counter.builder(ERRORS_COUNTER).tag("branch", "not_found").register(registry);
+        this.unexpectedErrors = Counter.builder(ERRORS_COUNTER).tag("branch", "unexpected").register(registry);
+    }
 
     @ExceptionHandler(ValidationException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public ErrorResponse handleValidation(final ValidationException  e) {
+        validationErrors.increment();
         return new ErrorResponse("error", e.getMessage());
     }
 
     @ExceptionHandler(ObjectNotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public ErrorResponse handleNotFound(final ObjectNotFoundException e) {
+        notFoundErrors.increment();
         return new ErrorResponse("error", e.getMessage());
     }
 
     @ExceptionHandler(Throwable.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse handleIncorrectParameter(final Throwable e) {
+        unexpectedErrors.increment();
+        log.error("Непредвиденная ошибка при обработке запроса.", e);
         return new ErrorResponse("error", "Произошла непредвиденная ошибка.");
     }
 }
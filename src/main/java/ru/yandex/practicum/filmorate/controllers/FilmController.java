@@ -1,32 +1,72 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.PopularFeedCache;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
 
-import javax.validation.Valid;
+import jakarta.validation.Valid;
 import java.util.List;
 
 @RestController
 @RequestMapping("/films")
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final ResourceVersions versions;
+    private final PopularFeedCache popularFeed;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, ResourceVersions versions,
+                          PopularFeedCache popularFeed) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.versions = versions;
+        this.popularFeed = popularFeed;
     }
 
+    //Без limit и after возвращается весь список, с ними - страница и курсор следующей страницы
     @GetMapping
-    public List<Film> findAll() {
-        return filmService.findAll();
+    public ResponseEntity<List<Film>> findAll(@RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) String after) throws ValidationException {
+        if (limit == null && after == null) {
+            return ResponseEntity.ok(filmService.findAll());
+        }
+        final int pageSize = PageCursor.limit(limit);
+        return PageCursor.toResponse(filmService.findPage(PageCursor.decode(after), pageSize + 1),
+                pageSize, Film::getId);
+    }
+
+    //Accept: application/x-ndjson - фильмы отдаются потоком, без сборки всего списка в памяти
+    @GetMapping(produces = NdjsonStream.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return NdjsonStream.of(objectMapper, filmService::streamAll);
     }
 
+    //Поиск по словам запроса, by - поля через запятую: title, description
+    @GetMapping("/search")
+    public List<Film> search(@RequestParam String query,
+                             @RequestParam(defaultValue = FilmSearchIndex.BY_TITLE + "," + FilmSearchIndex.BY_DESCRIPTION) String by,
+                             @RequestParam(required = false) Integer limit) throws ValidationException {
+        return filmService.search(query, by, PageCursor.limit(limit));
+    }
+
+    //If-None-Match с текущим ETag - ответ 304 без обращения к хранилищу
     @GetMapping("/{id}")
-    public Film findById(@Valid @PathVariable("id") long id) throws ObjectNotFoundException {
+    public Film findById(@Valid @PathVariable("id") long id, WebRequest request) throws ObjectNotFoundException {
+        if (request.checkNotModified(versions.filmTag(id))) {
+            return null;
+        }
         return filmService.findById(id);
     }
 
@@ -56,11 +96,21 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public List<Film> getPopularFilms(@RequestParam(defaultValue = "10", required = false) Integer count) throws ValidationException {
+    public ResponseEntity<byte[]> getPopularFilms(@RequestParam(defaultValue = "10", required = false) Integer count,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) Integer year,
+                                      WebRequest request) throws ValidationException {
         if (count <= 0) {
             throw new ValidationException("Значение параметра count не может быть отрицательно!");
         }
-        return filmService.getPopularFilms(count);
+        if (request.checkNotModified(versions.popularTag())) {
+            return null;
+        }
+        final PopularFeedCache.Feed feed = popularFeed.get(count, genreId, year);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(feed.getETag())
+                .body(feed.getBody());
     }
 
     //метод для тестов
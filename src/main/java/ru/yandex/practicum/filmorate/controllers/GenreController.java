@@ -1,8 +1,8 @@
 package ru.yandex.practicum.filmorate.controllers;
 
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -11,26 +11,38 @@ import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
-import javax.validation.Valid;
+import jakarta.validation.Valid;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/genres")
 public class GenreController {
-    private final FilmService filmService;
+    //Справочник жанров не меняется во время работы, поэтому ответы сериализуются один раз
+    private final PreSerializedJson allGenres;
+    private final Map<Long, PreSerializedJson> genresById = new HashMap<>();
 
     @Autowired
-    public GenreController(FilmService filmService) {
-        this.filmService = filmService;
+    public GenreController(FilmService filmService, ObjectMapper objectMapper) {
+        final List<Genre> genres = filmService.findAllGenre();
+        this.allGenres = PreSerializedJson.of(objectMapper, genres);
+        for (Genre genre : genres) {
+            genresById.put((long) genre.getId(), PreSerializedJson.of(objectMapper, genre));
+        }
     }
 
     @GetMapping
-    public List<Genre> findAll() {
-        return filmService.findAllGenre();
+    public ResponseEntity<byte[]> findAll() {
+        return allGenres.toResponse();
     }
 
     @GetMapping("/{id}")
-    public Genre findById(@Valid @PathVariable("id") long id) throws ObjectNotFoundException {
-        return filmService.findGenreById(id);
+    public ResponseEntity<byte[]> findById(@Valid @PathVariable("id") long id) throws ObjectNotFoundException {
+        final PreSerializedJson genre = genresById.get(id);
+        if (genre == null) {
+            throw new ObjectNotFoundException("Неизвестный жанр");
+        }
+        return genre.toResponse();
     }
-}
\ No newline at end of file
+}
@@ -1,6 +1,8 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -9,27 +11,39 @@ import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.MPARating;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
-import javax.validation.Valid;
+import jakarta.validation.Valid;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/mpa")
 public class MpaController {
-    private final FilmService filmService;
+    //Справочник рейтингов не меняется во время работы, поэтому ответы сериализуются один раз
+    private final PreSerializedJson allMpa;
+    private final Map<Long, PreSerializedJson> mpaById = new HashMap<>();
 
     @Autowired
-    public MpaController(FilmService filmService) {
-        this.filmService = filmService;
+    public MpaController(FilmService filmService, ObjectMapper objectMapper) {
+        final List<MPARating> mpaList = filmService.findAllMpa();
+        this.allMpa = PreSerializedJson.of(objectMapper, mpaList);
+        for (MPARating mpa : mpaList) {
+            mpaById.put((long) mpa.getId(), PreSerializedJson.of(objectMapper, mpa));
+        }
     }
 
     @GetMapping
-    public List<MPARating> findAll() {
-        return filmService.findAllMpa();
+    public ResponseEntity<byte[]> findAll() {
+        return allMpa.toResponse();
     }
 
     @GetMapping("/{id}")
-    public MPARating findById(@Valid @PathVariable("id") long id) throws ObjectNotFoundException {
-        return filmService.findMpaById(id);
+    public ResponseEntity<byte[]> findById(@Valid @PathVariable("id") long id) throws ObjectNotFoundException {
+        final PreSerializedJson mpa = mpaById.get(id);
+        if (mpa == null) {
+            throw new ObjectNotFoundException("Неизвестный рейтинг");
+        }
+        return mpa.toResponse();
     }
 
 }
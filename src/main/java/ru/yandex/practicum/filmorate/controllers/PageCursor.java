@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+//Постраничный вывод по ключу: курсор кодирует id последнего элемента страницы,
+//следующая страница начинается после него. Курсор следующей страницы передаётся в заголовке X-Next-Cursor.
+final class PageCursor {
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+    private static final String INVALID_CURSOR = "Некорректное значение параметра after.";
+    private static final String INVALID_LIMIT = "Значение параметра limit должно быть от 1 до " + MAX_LIMIT + ".";
+
+    private PageCursor() {
+    }
+
+    static long decode(String cursor) throws ValidationException {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException(INVALID_CURSOR);
+        }
+    }
+
+    static String encode(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Long.toString(id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int limit(Integer limit) throws ValidationException {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new ValidationException(INVALID_LIMIT);
+        }
+        return limit;
+    }
+
+    //items запрошены с лимитом limit + 1: лишний элемент означает, что есть следующая страница
+    static <T> ResponseEntity<List<T>> toResponse(List<T> items, int limit, ToLongFunction<T> id) {
+        if (items.size() <= limit) {
+            return ResponseEntity.ok(items);
+        }
+        final List<T> page = items.subList(0, limit);
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, encode(id.applyAsLong(page.get(limit - 1))))
+                .body(page);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+
+//Заранее сериализованное тело ответа с ETag. Если ETag совпал с If-None-Match,
+//Spring сам отвечает 304 без тела.
+final class PreSerializedJson {
+    private final byte[] body;
+    private final String eTag;
+
+    private PreSerializedJson(byte[] body) {
+        this.body = body;
+        this.eTag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+    }
+
+    static PreSerializedJson of(ObjectMapper objectMapper, Object value) {
+        try {
+            return new PreSerializedJson(objectMapper.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать ответ", e);
+        }
+    }
+
+    ResponseEntity<byte[]> toResponse() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(eTag)
+                .body(body);
+    }
+}
@@ -1,33 +1,64 @@
 package ru.yandex.practicum.filmorate.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
 import ru.yandex.practicum.filmorate.service.UserService;
 
-import javax.validation.Valid;
+import jakarta.validation.Valid;
 import java.util.List;
 
 @RestController
 @RequestMapping("/users")
 public class UserController {
+    private static final int MAX_MUTUAL_BATCH = 10_000;
+    private static final String TOO_MANY_IDS = "За один запрос можно передать не больше " + MAX_MUTUAL_BATCH + " id.";
 
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final ResourceVersions versions;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, ObjectMapper objectMapper, ResourceVersions versions) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.versions = versions;
     }
 
+    //Без limit и after возвращается весь список, с ними - страница и курсор следующей страницы
     @GetMapping
-    public List<User> findAll() {
-        return userService.findAll();
+    public ResponseEntity<List<User>> findAll(@RequestParam(required = false) Integer limit,
+                                              @RequestParam(required = false) String after) throws ValidationException {
+        if (limit == null && after == null) {
+            return ResponseEntity.ok(userService.findAll());
+        }
+        final int pageSize = PageCursor.limit(limit);
+        return PageCursor.toResponse(userService.findPage(PageCursor.decode(after), pageSize + 1),
+                pageSize, User::getId);
     }
 
+    //Accept: application/x-ndjson - пользователи отдаются потоком, без сборки всего списка в памяти
+    @GetMapping(produces = NdjsonStream.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return NdjsonStream.of(objectMapper, userService::streamAll);
+    }
+
+    //If-None-Match с текущим ETag - ответ 304 без обращения к хранилищу
     @GetMapping("/{id}")
-    public User findById(@PathVariable("id") long id) throws ObjectNotFoundException {
+    public User findById(@PathVariable("id") long id, WebRequest request) throws ObjectNotFoundException {
+        if (request.checkNotModified(versions.userTag(id))) {
+            return null;
+        }
         return userService.findById(id);
     }
 
@@ -57,8 +88,20 @@ public class UserController {
     }
 
     @GetMapping("/{id}/friends")
-    public List<User> getFriends(@PathVariable("id") long id) throws ObjectNotFoundException {
-        return userService.getFriends(id);
+    public ResponseEntity<List<User>> getFriends(@PathVariable("id") long id,
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) String after,
+                                                 WebRequest request)
+            throws ObjectNotFoundException, ValidationException {
+        if (request.checkNotModified(versions.friendsTag(id))) {
+            return null;
+        }
+        if (limit == null && after == null) {
+            return ResponseEntity.ok(userService.getFriends(id));
+        }
+        final int pageSize = PageCursor.limit(limit);
+        return PageCursor.toResponse(userService.getFriendsPage(id, PageCursor.decode(after), pageSize + 1),
+                pageSize, User::getId);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
@@ -66,6 +109,44 @@ public class UserController {
         return userService.getCommonFriends(id, otherId);
     }
 
+    //Число общих друзей с каждым из пользователей ids за один запрос: ?ids=2,3,4
+    @GetMapping("/{id}/friends/common")
+    public List<MutualFriends> getMutualFriendsCounts(@PathVariable("id") long id, @RequestParam List<Long> ids)
+            throws ObjectNotFoundException, ValidationException {
+        return countMutualFriends(id, ids);
+    }
+
+    //То же для длинных списков: id передаются массивом в теле запроса
+    @PostMapping("/{id}/friends/common")
+    public List<MutualFriends> postMutualFriendsCounts(@PathVariable("id") long id, @RequestBody List<Long> ids)
+            throws ObjectNotFoundException, ValidationException {
+        return countMutualFriends(id, ids);
+    }
+
+    //Друзья друзей по убыванию числа общих друзей
+    @GetMapping("/{id}/friends/suggestions")
+    public List<FriendSuggestion> getFriendSuggestions(@PathVariable("id") long id,
+                                                       @RequestParam(required = false) Integer limit)
+            throws ObjectNotFoundException, ValidationException {
+        return userService.getFriendSuggestions(id, PageCursor.limit(limit));
+    }
+
+    //Фильмы, которые понравились пользователям с похожими лайками
+    @GetMapping("/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable("id") long id,
+                                         @RequestParam(required = false) Integer limit)
+            throws ObjectNotFoundException, ValidationException {
+        return userService.getRecommendations(id, PageCursor.limit(limit));
+    }
+
+    private List<MutualFriends> countMutualFriends(long id, List<Long> ids)
+            throws ObjectNotFoundException, ValidationException {
+        if (ids.size() > MAX_MUTUAL_BATCH) {
+            throw new ValidationException(TOO_MANY_IDS);
+        }
+        return userService.getMutualFriendsCounts(id, ids);
+    }
+
     //метод для тестов
     public void deleteAll() {
         userService.deleteAll();
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//Число обращений к БД на HTTP-запрос, по шаблону URI - как у http.server.requests.
+//Учитываются запросы из потока обработки; потоковые ответы, отдаваемые в другом потоке, сюда не попадают
+@Component
+public class RequestStatementsFilter extends OncePerRequestFilter {
+    static final String STATEMENTS_PER_REQUEST = "filmorate.db.statements.per.request";
+
+    private final MeterRegistry registry;
+    private final Map<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RequestStatementsFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        StatementCounter.startRequest();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            final int statements = StatementCounter.finishRequest();
+            final Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            final String uri = pattern == null ? "UNKNOWN" : pattern.toString();
+            summaries.computeIfAbsent(request.getMethod() + " " + uri, key -> DistributionSummary
+                            .builder(STATEMENTS_PER_REQUEST)
+                            .tag("method", request.getMethod())
+                            .tag("uri", uri)
+                            .register(registry))
+                    .record(statements);
+        }
+    }
+}
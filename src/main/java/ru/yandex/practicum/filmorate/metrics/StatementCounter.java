@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+//Считает обращения к БД (созданные Statement) - всего и в рамках текущего HTTP-запроса.
+//DataSource оборачивается при создании бина, поэтому считаются запросы всех JdbcTemplate
+@Component
+public class StatementCounter implements BeanPostProcessor {
+    static final String STATEMENTS_COUNTER = "filmorate.db.statements";
+
+    //Счётчик текущего запроса; null, если поток не обрабатывает HTTP-запрос
+    private static final ThreadLocal<int[]> REQUEST_STATEMENTS = new ThreadLocal<>();
+
+    private final ObjectProvider<MeterRegistry> registry;
+    private volatile Counter total;
+
+    public StatementCounter(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof CountingDataSource)) {
+            return new CountingDataSource((DataSource) bean);
+        }
+        return bean;
+    }
+
+    static void startRequest() {
+        REQUEST_STATEMENTS.set(new int[1]);
+    }
+
+    static int finishRequest() {
+        final int[] statements = REQUEST_STATEMENTS.get();
+        REQUEST_STATEMENTS.remove();
+        return statements == null ? 0 : statements[0];
+    }
+
+    private void count() {
+        final int[] statements = REQUEST_STATEMENTS.get();
+        if (statements != null) {
+            statements[0]++;
+        }
+        Counter counter = total;
+        if (counter == null) {
+            //Реестр метрик создаётся позже DataSource, поэтому берётся при первом запросе к БД
+            counter = Counter.builder(STATEMENTS_COUNTER).register(registry.getObject());
+            total = counter;
+        }
+        counter.increment();
+    }
+
+    private class CountingDataSource extends DelegatingDataSource {
+        private CountingDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        private Connection counting(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                    (proxy, method, args) -> {
+                        final String name = method.getName();
+                        if (name.equals("prepareStatement") || name.equals("createStatement")
+                                || name.equals("prepareCall")) {
+                            count();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+}
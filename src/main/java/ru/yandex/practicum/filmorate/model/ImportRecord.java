@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//Одна строка NDJSON для массового импорта. В зависимости от type заполнены:
+//user - user (с id), film - film (с id), like - filmId и userId, friend - userId и friendId.
+@Data
+@NoArgsConstructor
+public class ImportRecord {
+    private String type;
+    private User user;
+    private Film film;
+    private long filmId;
+    private long userId;
+    private long friendId;
+}
@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+public class ImportReport {
+    private long lines;
+    private long imported;
+    private long failed;
+    //Подробности хранятся только для первых ошибок, остальные учитываются в failed
+    private List<ImportError> errors = new ArrayList<>();
+    private long elapsedMillis;
+    private double rowsPerSecond;
+
+    @Data
+    public static class ImportError {
+        private final long line;
+        private final String message;
+    }
+}
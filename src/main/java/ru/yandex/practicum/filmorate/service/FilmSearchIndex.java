@@ -0,0 +1,343 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongUnaryOperator;
+
+//Полнотекстовый поиск по названию и описанию фильмов: для каждого слова хранится
+//сжатое битовое множество id фильмов, в которых оно встречается.
+//Находятся фильмы, содержащие все слова запроса; совпадение в названии весит больше, чем в описании.
+@Slf4j
+@Component
+public class FilmSearchIndex {
+    public static final String BY_TITLE = "title";
+    public static final String BY_DESCRIPTION = "description";
+    private static final int TITLE_WEIGHT = 2;
+    private static final int DESCRIPTION_WEIGHT = 1;
+
+    private final FilmStorage filmStorage;
+    private final Map<String, RoaringBitmap> titles = new HashMap<>();
+    private final Map<String, RoaringBitmap> descriptions = new HashMap<>();
+    //Слова каждого фильма, чтобы при изменении и удалении убрать его из прежних списков
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final ResourceVersions versions;
+    //Число лайков из хранилища и версия рейтинга, взятая до его чтения
+    private volatile LikesCount likesCount = new LikesCount(null, Map.of());
+
+    @Autowired
+    public FilmSearchIndex(FilmStorage filmStorage, ResourceVersions versions) {
+        this.filmStorage = filmStorage;
+        this.versions = versions;
+    }
+
+    @PostConstruct
+    public void warmUp() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            descriptions.clear();
+            documents.clear();
+            filmStorage.streamAll(this::index);
+            log.debug(String.format("Поисковый индекс загружен: %d фильмов, %d слов.",
+                    documents.size(), titles.size() + descriptions.size()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //Добавляет фильм или заменяет его прежние слова новыми
+    public void put(Film film) {
+        lock.writeLock().lock();
+        try {
+            unindex(film.getId());
+            index(film);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        lock.writeLock().lock();
+        try {
+            unindex(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            descriptions.clear();
+            documents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //id найденных фильмов по убыванию релевантности, затем числа лайков, затем по возрастанию id.
+    //Без рейтинга популярности число лайков берётся из хранилища, не чаще одного раза на версию рейтинга
+    public List<Long> search(String query, boolean byTitle, boolean byDescription, int limit,
+                             PopularityIndex popularityIndex) {
+        final Set<String> words = tokenize(query);
+        if (words.isEmpty() || (!byTitle && !byDescription) || limit <= 0) {
+            return new ArrayList<>();
+        }
+        final LongUnaryOperator likes;
+        if (popularityIndex != null) {
+            likes = popularityIndex::getLikes;
+        } else {
+            final Map<Long, Long> likesCount = likesCount();
+            likes = filmId -> likesCount.getOrDefault(filmId, 0L);
+        }
+        lock.readLock().lock();
+        try {
+            final List<Long> ids = new ArrayList<>();
+            //Часто limit набирается из фильмов, где все слова есть во всех полях: тогда уровни не нужны
+            final RoaringBitmap best = best(words, byTitle, byDescription);
+            if (best.getLongCardinality() >= limit) {
+                top(best, limit, likes, popularityIndex, ids);
+                return ids;
+            }
+            final RoaringBitmap[] levels = levels(match(words, byTitle, byDescription), words, byTitle, byDescription);
+            for (int score = levels.length - 1; score > 0 && ids.size() < limit; score--) {
+                if (!levels[score].isEmpty()) {
+                    top(levels[score], limit - ids.size(), likes, popularityIndex, ids);
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Long> likesCount() {
+        final String version = versions.popularTag();
+        final LikesCount cached = likesCount;
+        if (version.equals(cached.version)) {
+            return cached.counts;
+        }
+        final Map<Long, Long> counts = filmStorage.findLikesCount();
+        likesCount = new LikesCount(version, counts);
+        return counts;
+    }
+
+    //Слова в нижнем регистре, «ё» приравнивается к «е», разделители — всё, кроме букв и цифр
+    static Set<String> tokenize(String text) {
+        final Set<String> words = new LinkedHashSet<>();
+        if (text == null) {
+            return words;
+        }
+        final String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            final boolean letter = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    //Пересечение по словам запроса: каждое слово должно встретиться хотя бы в одном из выбранных полей
+    private RoaringBitmap match(Set<String> words, boolean byTitle, boolean byDescription) {
+        RoaringBitmap found = null;
+        for (String word : words) {
+            final RoaringBitmap films = new RoaringBitmap();
+            if (byTitle) {
+                films.or(titles.getOrDefault(word, EMPTY));
+            }
+            if (byDescription) {
+                films.or(descriptions.getOrDefault(word, EMPTY));
+            }
+            if (found == null) {
+                found = films;
+            } else {
+                found.and(films);
+            }
+            if (found.isEmpty()) {
+                break;
+            }
+        }
+        return found;
+    }
+
+    //Фильмы с наибольшей возможной релевантностью: каждое слово есть в каждом выбранном поле.
+    //Пересечение начинается с самого короткого списка, дальше множество только уменьшается
+    private RoaringBitmap best(Set<String> words, boolean byTitle, boolean byDescription) {
+        final List<RoaringBitmap> postings = new ArrayList<>();
+        for (String word : words) {
+            if (byTitle) {
+                postings.add(titles.getOrDefault(word, EMPTY));
+            }
+            if (byDescription) {
+                postings.add(descriptions.getOrDefault(word, EMPTY));
+            }
+        }
+        postings.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+        final RoaringBitmap best = postings.get(0).clone();
+        for (int i = 1; i < postings.size() && !best.isEmpty(); i++) {
+            best.and(postings.get(i));
+        }
+        return best;
+    }
+
+    //Раскладывает найденные фильмы по релевантности: levels[score] - фильмы с этой суммой весов.
+    //Считается операциями над множествами, без обхода отдельных фильмов
+    private RoaringBitmap[] levels(RoaringBitmap found, Set<String> words, boolean byTitle, boolean byDescription) {
+        final int maxScore = words.size() * ((byTitle ? TITLE_WEIGHT : 0) + (byDescription ? DESCRIPTION_WEIGHT : 0));
+        final RoaringBitmap[] levels = new RoaringBitmap[maxScore + 1];
+        for (int score = 0; score <= maxScore; score++) {
+            levels[score] = new RoaringBitmap();
+        }
+        levels[0] = found;
+        int reached = 0;
+        for (String word : words) {
+            if (byTitle) {
+                reached = raise(levels, reached, titles.get(word), TITLE_WEIGHT);
+            }
+            if (byDescription) {
+                reached = raise(levels, reached, descriptions.get(word), DESCRIPTION_WEIGHT);
+            }
+        }
+        return levels;
+    }
+
+    //Фильмы из postings поднимаются на weight уровней; обход сверху, чтобы не поднять фильм дважды
+    private static int raise(RoaringBitmap[] levels, int reached, RoaringBitmap postings, int weight) {
+        if (postings == null) {
+            return reached;
+        }
+        for (int score = reached; score >= 0; score--) {
+            final RoaringBitmap raised = RoaringBitmap.and(levels[score], postings);
+            if (!raised.isEmpty()) {
+                levels[score].andNot(raised);
+                levels[score + weight].or(raised);
+            }
+        }
+        return reached + weight;
+    }
+
+    //Добавляет в ids до count фильмов из films по убыванию лайков. Если фильмов много, выгоднее
+    //идти по общему рейтингу и отбирать входящие в films: ожидаемо count * size / |films| шагов
+    private static void top(RoaringBitmap films, int count, LongUnaryOperator likes,
+                            PopularityIndex popularityIndex, List<Long> ids) {
+        final long cardinality = films.getLongCardinality();
+        if (popularityIndex != null && cardinality * cardinality > (long) count * popularityIndex.size()) {
+            final int expected = (int) Math.min(count, cardinality);
+            final List<Long> ranked = popularityIndex.getTop(expected, filmId -> films.contains((int) filmId));
+            //Рейтинг мог разойтись с индексом, тогда фильмы перебираются напрямую
+            if (ranked.size() == expected) {
+                ids.addAll(ranked);
+                return;
+            }
+        }
+        //В очереди остаются count лучших: в её голове худший из них
+        final PriorityQueue<Hit> top = new PriorityQueue<>(Hit.BY_LIKES_DESC.reversed());
+        final IntIterator iterator = films.getIntIterator();
+        while (iterator.hasNext()) {
+            final int filmId = iterator.next();
+            top.add(new Hit(filmId, likes.applyAsLong(filmId)));
+            if (top.size() > count) {
+                top.poll();
+            }
+        }
+        final List<Hit> hits = new ArrayList<>(top);
+        hits.sort(Hit.BY_LIKES_DESC);
+        for (Hit hit : hits) {
+            ids.add(hit.filmId);
+        }
+    }
+
+    private void index(Film film) {
+        final Document document = new Document(tokenize(film.getName()), tokenize(film.getDescription()));
+        documents.put(film.getId(), document);
+        for (String word : document.title) {
+            titles.computeIfAbsent(word, key -> new RoaringBitmap()).add((int) film.getId());
+        }
+        for (String word : document.description) {
+            descriptions.computeIfAbsent(word, key -> new RoaringBitmap()).add((int) film.getId());
+        }
+    }
+
+    private void unindex(long filmId) {
+        final Document document = documents.remove(filmId);
+        if (document == null) {
+            return;
+        }
+        unindex(titles, document.title, filmId);
+        unindex(descriptions, document.description, filmId);
+    }
+
+    private static void unindex(Map<String, RoaringBitmap> postings, Set<String> words, long filmId) {
+        for (String word : words) {
+            final RoaringBitmap films = postings.get(word);
+            if (films != null) {
+                films.remove((int) filmId);
+                if (films.isEmpty()) {
+                    postings.remove(word);
+                }
+            }
+        }
+    }
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private static final class Document {
+        private final Set<String> title;
+        private final Set<String> description;
+
+        private Document(Set<String> title, Set<String> description) {
+            this.title = title;
+            this.description = description;
+        }
+    }
+
+    private static final class LikesCount {
+        private final String version;
+        private final Map<Long, Long> counts;
+
+        private LikesCount(String version, Map<Long, Long> counts) {
+            this.version = version;
+            this.counts = counts;
+        }
+    }
+
+    private static final class Hit {
+        private static final Comparator<Hit> BY_LIKES_DESC = Comparator
+                .comparingLong((Hit hit) -> hit.likes).reversed()
+                .thenComparingLong(hit -> hit.filmId);
+
+        private final long filmId;
+        private final long likes;
+
+        private Hit(long filmId, long likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+    }
+}
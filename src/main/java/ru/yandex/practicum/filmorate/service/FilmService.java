@@ -7,15 +7,19 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MPARating;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmService {
     List<Film> findAll();
+    void streamAll(Consumer<Film> consumer);
+    List<Film> findPage(long afterId, int limit);
     Film findById(long id) throws ObjectNotFoundException;
     Film create(Film film) throws ValidationException;
     Film put(Film film) throws ValidationException, ObjectNotFoundException;
     Film addLike(long filmId, long userId) throws ObjectNotFoundException;
     Film deleteLike(long filmId, long userId) throws ObjectNotFoundException;
-    List<Film> getPopularFilms(int count);
+    List<Film> getPopularFilms(int count, Integer genreId, Integer year);
+    List<Film> search(String query, String by, int limit) throws ValidationException;
     void deleteAll();
     void delete(long id) throws ValidationException, ObjectNotFoundException;
     MPARating findMpaById(long id) throws ObjectNotFoundException;
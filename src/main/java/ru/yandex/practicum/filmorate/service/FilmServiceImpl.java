@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
@@ -15,6 +16,9 @@ import ru.yandex.practicum.filmorate.storage.UserStorage;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 
 @Slf4j
@@ -22,17 +26,35 @@ import java.util.List;
 public class FilmServiceImpl implements FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final PopularityIndex popularityIndex;
+    private final RecommendationEngine recommendationEngine;
+    private final FilmSearchIndex searchIndex;
+    private final LikeWriteBehindQueue likeQueue;
+    private final ResourceVersions versions;
+    //Запись лайков в хранилище и их учёт в рейтинге; без рейтинга блокировка ни с чем не пересекается
+    private final Lock likesLock;
     private final static LocalDate DATE_BORN_MOVIE = LocalDate.of(1895, Month.DECEMBER, 28);
     private static final String NO_DATA_FOUND = "Данные о фильме не заполнены.";
     private static final String EMPTY_NAME = "Название фильма не может быть пустым.";
     private static final String MAX_DESCRIPTION_LENGTH = "Превышена максимальная длина описания — 200 символов";
     private static final String DURATION_IS_POSITIVE = "Продолжительность фильма должна быть больше 0";
     private static final String EARLY_RELEASE_DATE = "Дата релиза не может быть раньше даты 28.12.1895";
+    private static final String INVALID_SEARCH_FIELD = "Параметр by может содержать только title и description.";
 
     @Autowired
-    public FilmServiceImpl(FilmStorage filmStorage, UserStorage userStorage) {
+    public FilmServiceImpl(FilmStorage filmStorage, UserStorage userStorage,
+                           ObjectProvider<PopularityIndex> popularityIndex,
+                           RecommendationEngine recommendationEngine, FilmSearchIndex searchIndex,
+                           ObjectProvider<LikeWriteBehindQueue> likeQueue, ResourceVersions versions) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.popularityIndex = popularityIndex.getIfAvailable();
+        this.recommendationEngine = recommendationEngine;
+        this.searchIndex = searchIndex;
+        this.likeQueue = likeQueue.getIfAvailable();
+        this.versions = versions;
+        this.likesLock = this.popularityIndex != null ? this.popularityIndex.likesLock()
+                : new ReentrantReadWriteLock().readLock();
     }
 
     @Override
@@ -40,6 +62,16 @@ public class FilmServiceImpl implements FilmService {
         return filmStorage.findAll();
     }
 
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return filmStorage.findPage(afterId, limit);
+    }
+
     @Override
     public Film findById(long id) throws ObjectNotFoundException {
         return filmStorage.findById(id);
@@ -52,8 +84,14 @@ public class FilmServiceImpl implements FilmService {
             log.debug("Ошибка при попытке добавления нового фильма: " + message);
             throw new ValidationException(message);
         }
-        log.debug(String.format("Добавлен новый фильм %d.", film.getId()));
-        return filmStorage.create(film);
+        Film created = filmStorage.create(film);
+        if (popularityIndex != null) {
+            popularityIndex.addFilm(created);
+        }
+        searchIndex.put(created);
+        versions.filmChanged(created.getId());
+        log.debug(String.format("Добавлен новый фильм %d.", created.getId()));
+        return created;
     }
 
     @Override
@@ -63,8 +101,14 @@ public class FilmServiceImpl implements FilmService {
             log.debug("Ошибка при попытке редактирования фильма: " + message);
             throw new ValidationException(message);
         }
+        Film updated = filmStorage.put(film);
+        if (popularityIndex != null) {
+            popularityIndex.updateFilm(updated);
+        }
+        searchIndex.put(updated);
+        versions.filmChanged(updated.getId());
         log.debug(String.format("Изменения для фильма %d успешно приняты.", film.getId()));
-        return filmStorage.put(film);
+        return updated;
     }
 
     @Override
@@ -79,10 +123,18 @@ public class FilmServiceImpl implements FilmService {
             log.debug(String.format("Ошибка при попытке лайкнуть фильм. Пользователь %d не найден.",userId));
             throw new ObjectNotFoundException(String.format("Пользователь с id %d не найден", userId));
         }
-        if (filmStorage.addLike(filmId, userId)) {
-            log.debug(String.format("Пользователь %d лайкнул фильм %d",
-                    user.getId(), film.getId()));
-        };
+        //В режиме отложенной записи лайк подтверждается после постановки в очередь
+        likesLock.lock();
+        try {
+            if (likeQueue != null) {
+                likeQueue.offer(filmId, userId, true, () -> likeAdded(filmId, userId),
+                        () -> likeDeleted(filmId, userId));
+            } else if (filmStorage.addLike(filmId, userId)) {
+                likeAdded(filmId, userId);
+            }
+        } finally {
+            likesLock.unlock();
+        }
         return film;
     }
 
@@ -98,26 +150,96 @@ public class FilmServiceImpl implements FilmService {
             log.debug(String.format("Ошибка при попытке лайкнуть фильм. Пользователь %d не найден.",userId));
             throw new ObjectNotFoundException(String.format("Пользователь с id %d не найден", userId));
         }
-        filmStorage.deleteLike(filmId, userId);
-        log.debug(String.format("Пользователь %d удалил лайк у фильма %d",
-                user.getId(), film.getId()));
+        likesLock.lock();
+        try {
+            if (likeQueue != null) {
+                likeQueue.offer(filmId, userId, false, () -> likeDeleted(filmId, userId));
+            } else if (filmStorage.deleteLike(filmId, userId)) {
+                likeDeleted(filmId, userId);
+            }
+        } finally {
+            likesLock.unlock();
+        }
         return film;
     }
 
+    private void likeAdded(long filmId, long userId) {
+        recommendationEngine.addLike(userId, filmId);
+        if (popularityIndex != null) {
+            popularityIndex.addLike(filmId);
+        }
+        versions.filmChanged(filmId);
+        log.debug(String.format("Пользователь %d лайкнул фильм %d", userId, filmId));
+    }
+
+    private void likeDeleted(long filmId, long userId) {
+        recommendationEngine.deleteLike(userId, filmId);
+        if (popularityIndex != null) {
+            popularityIndex.deleteLike(filmId);
+        }
+        versions.filmChanged(filmId);
+        log.debug(String.format("Пользователь %d удалил лайк у фильма %d", userId, filmId));
+    }
+
     @Override
-    public List<Film> getPopularFilms(int count) {
-        return filmStorage.getPopularFilms(count);
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        if (popularityIndex != null) {
+            return popularityIndex.getTopFilms(count, genreId, year);
+        }
+        if (genreId == null && year == null) {
+            return filmStorage.getPopularFilms(count);
+        }
+        return filmStorage.getPopularFilms(count, genreId, year);
+    }
+
+    //by - поля через запятую: title, description
+    @Override
+    public List<Film> search(String query, String by, int limit) throws ValidationException {
+        boolean byTitle = false;
+        boolean byDescription = false;
+        for (String field : by.split(",")) {
+            switch (field.trim().toLowerCase()) {
+                case FilmSearchIndex.BY_TITLE:
+                    byTitle = true;
+                    break;
+                case FilmSearchIndex.BY_DESCRIPTION:
+                    byDescription = true;
+                    break;
+                default:
+                    throw new ValidationException(INVALID_SEARCH_FIELD);
+            }
+        }
+        return filmStorage.findByIds(searchIndex.search(query, byTitle, byDescription, limit, popularityIndex));
     }
 
     @Override
     public void deleteAll() {
         log.debug("Все фильмы удалены из системы. :(");
+        if (likeQueue != null) {
+            likeQueue.flush();
+        }
         filmStorage.deleteAll();
+        recommendationEngine.clear();
+        searchIndex.clear();
+        if (popularityIndex != null) {
+            popularityIndex.clear();
+        }
+        versions.reset();
     }
 
     @Override
     public void delete(long id) throws ValidationException, ObjectNotFoundException {
+        //Лайки из очереди записываются до удаления, чтобы не ссылаться на удалённый фильм
+        if (likeQueue != null) {
+            likeQueue.flush();
+        }
         filmStorage.delete(id);
+        recommendationEngine.removeFilm(id);
+        searchIndex.remove(id);
+        if (popularityIndex != null) {
+            popularityIndex.removeFilm(id);
+        }
+        versions.filmChanged(id);
     }
 
     @Override
@@ -140,7 +262,7 @@ public class FilmServiceImpl implements FilmService {
         return filmStorage.findAllGenre();
     }
 
-    private String check(Film film) throws ValidationException {
+    static String check(Film film) throws ValidationException {
         String message = "";
         if (film == null) {
             message = NO_DATA_FOUND;
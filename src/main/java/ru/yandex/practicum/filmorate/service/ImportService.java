@@ -0,0 +1,10 @@
+package ru.yandex.practicum.filmorate.service;
+
+import ru.yandex.practicum.filmorate.model.ImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public interface ImportService {
+    ImportReport importNdjson(InputStream input, Integer batchSize) throws IOException;
+}
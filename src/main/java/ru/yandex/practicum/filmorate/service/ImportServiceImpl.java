@@ -0,0 +1,262 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.ImportRecord;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.database.ImportDbStorage;
+import ru.yandex.practicum.filmorate.storage.replica.ReadReplica;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+@Slf4j
+@Service
+public class ImportServiceImpl implements ImportService {
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final String INVALID_BATCH_SIZE = "Размер пачки должен быть больше 0.";
+    private static final String INVALID_JSON = "Некорректный JSON: ";
+    private static final String UNKNOWN_TYPE = "Неизвестный тип записи: ";
+    private static final String NO_DATA_FOUND = "Данные записи не заполнены.";
+    private static final String EMPTY_ID = "Не указан id.";
+    private static final String EMPTY_REQUIRED_FIELDS = "Не заполнены обязательные поля.";
+
+    private final ImportDbStorage importStorage;
+    private final ObjectReader recordReader;
+    private final PopularityIndex popularityIndex;
+    private final RecommendationEngine recommendationEngine;
+    private final FilmSearchIndex searchIndex;
+    private final LikeWriteBehindQueue likeQueue;
+    private final ReadReplica readReplica;
+    private final ResourceVersions versions;
+    private final int defaultBatchSize;
+
+    @Autowired
+    public ImportServiceImpl(ImportDbStorage importStorage, ObjectMapper objectMapper,
+                             ObjectProvider<PopularityIndex> popularityIndex,
+                             RecommendationEngine recommendationEngine,
+                             FilmSearchIndex searchIndex,
+                             ObjectProvider<LikeWriteBehindQueue> likeQueue,
+                             ObjectProvider<ReadReplica> readReplica, ResourceVersions versions,
+                             @Value("${filmorate.import.batch-size:5000}") int defaultBatchSize) {
+        this.importStorage = importStorage;
+        this.recordReader = objectMapper.readerFor(ImportRecord.class);
+        this.popularityIndex = popularityIndex.getIfAvailable();
+        this.recommendationEngine = recommendationEngine;
+        this.searchIndex = searchIndex;
+        this.likeQueue = likeQueue.getIfAvailable();
+        this.readReplica = readReplica.getIfAvailable();
+        this.versions = versions;
+        this.defaultBatchSize = defaultBatchSize;
+    }
+
+    //Файл читается построчно, в памяти держится только текущая пачка
+    @Override
+    public ImportReport importNdjson(InputStream input, Integer batchSize) throws IOException {
+        final int size = batchSize == null ? defaultBatchSize : batchSize;
+        if (size <= 0) {
+            throw new ValidationException(INVALID_BATCH_SIZE);
+        }
+        final long started = System.nanoTime();
+        final ImportReport report = new ImportReport();
+        final Batch batch = new Batch(size);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            report.setLines(report.getLines() + 1);
+            final String message = add(batch, line, lineNumber);
+            if (!message.isBlank()) {
+                addError(report, lineNumber, message);
+            } else if (batch.size() >= size) {
+                flush(batch, report);
+            }
+        }
+        flush(batch, report);
+        //Индексы ниже перечитываются из БД, поэтому отложенные лайки записываются до этого
+        if (likeQueue != null) {
+            likeQueue.flush();
+        }
+        importStorage.finish();
+        //Импорт пишет в БД в обход хранилищ, поэтому копия для чтения перечитывается раньше индексов
+        if (readReplica != null) {
+            readReplica.reload();
+        }
+        recommendationEngine.warmUp();
+        searchIndex.warmUp();
+        if (popularityIndex != null) {
+            popularityIndex.warmUp();
+        }
+        versions.reset();
+
+        final long elapsedNanos = System.nanoTime() - started;
+        report.setElapsedMillis(elapsedNanos / 1_000_000);
+        report.setRowsPerSecond(elapsedNanos == 0 ? 0 : report.getImported() * 1e9 / elapsedNanos);
+        log.debug(String.format("Импорт завершён: %d строк загружено, %d с ошибками.",
+                report.getImported(), report.getFailed()));
+        return report;
+    }
+
+    private String add(Batch batch, String line, long lineNumber) {
+        final ImportRecord record;
+        try {
+            record = recordReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            return INVALID_JSON + e.getOriginalMessage();
+        }
+        if (record.getType() == null) {
+            return UNKNOWN_TYPE + null;
+        }
+        switch (record.getType()) {
+            case "user":
+                final User user = record.getUser();
+                if (user == null) {
+                    return NO_DATA_FOUND;
+                } else if (user.getId() <= 0) {
+                    return EMPTY_ID;
+                } else if (user.getBirthday() == null) {
+                    return EMPTY_REQUIRED_FIELDS;
+                }
+                final String userMessage = UserServiceImpl.check(user);
+                if (!userMessage.isBlank()) {
+                    return userMessage;
+                }
+                batch.users.add(user);
+                batch.userLines.add(lineNumber);
+                return "";
+            case "film":
+                final Film film = record.getFilm();
+                if (film == null) {
+                    return NO_DATA_FOUND;
+                } else if (film.getId() <= 0) {
+                    return EMPTY_ID;
+                } else if (film.getDescription() == null || film.getReleaseDate() == null || film.getMpa() == null) {
+                    return EMPTY_REQUIRED_FIELDS;
+                }
+                final String filmMessage = FilmServiceImpl.check(film);
+                if (!filmMessage.isBlank()) {
+                    return filmMessage;
+                }
+                batch.films.add(film);
+                batch.filmLines.add(lineNumber);
+                return "";
+            case "like":
+                if (record.getFilmId() <= 0 || record.getUserId() <= 0) {
+                    return EMPTY_ID;
+                }
+                batch.likes.add(new Like(record.getFilmId(), record.getUserId()));
+                batch.likeLines.add(lineNumber);
+                return "";
+            case "friend":
+                if (record.getUserId() <= 0 || record.getFriendId() <= 0) {
+                    return EMPTY_ID;
+                }
+                batch.friendships.add(new Friendship(record.getUserId(), record.getFriendId()));
+                batch.friendshipLines.add(lineNumber);
+                return "";
+            default:
+                return UNKNOWN_TYPE + record.getType();
+        }
+    }
+
+    //Ошибка БД откатывает всю пачку. Тогда пачка повторяется по одной строке,
+    //чтобы загрузить корректные строки и указать в отчёте только ошибочные.
+    private void flush(Batch batch, ImportReport report) {
+        if (batch.size() == 0) {
+            return;
+        }
+        try {
+            importStorage.write(batch.users, batch.films, batch.likes, batch.friendships);
+            report.setImported(report.getImported() + batch.size());
+        } catch (DataAccessException e) {
+            log.debug("Ошибка при записи пачки импорта, строки записываются по одной: "
+                    + e.getMostSpecificCause().getMessage());
+            for (int i = 0; i < batch.users.size(); i++) {
+                writeOne(report, batch.userLines.get(i), List.of(batch.users.get(i)), List.of(), List.of(), List.of());
+            }
+            for (int i = 0; i < batch.films.size(); i++) {
+                writeOne(report, batch.filmLines.get(i), List.of(), List.of(batch.films.get(i)), List.of(), List.of());
+            }
+            for (int i = 0; i < batch.likes.size(); i++) {
+                writeOne(report, batch.likeLines.get(i), List.of(), List.of(), List.of(batch.likes.get(i)), List.of());
+            }
+            for (int i = 0; i < batch.friendships.size(); i++) {
+                writeOne(report, batch.friendshipLines.get(i),
+                        List.of(), List.of(), List.of(), List.of(batch.friendships.get(i)));
+            }
+        }
+        batch.clear();
+    }
+
+    private void writeOne(ImportReport report, long lineNumber, List<User> users, List<Film> films,
+                          List<Like> likes, List<Friendship> friendships) {
+        try {
+            importStorage.write(users, films, likes, friendships);
+            report.setImported(report.getImported() + 1);
+        } catch (DataAccessException e) {
+            addError(report, lineNumber, e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private static void addError(ImportReport report, long lineNumber, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new ImportReport.ImportError(lineNumber, message));
+        }
+    }
+
+    private static class Batch {
+        private final List<User> users;
+        private final List<Film> films;
+        private final List<Like> likes;
+        private final List<Friendship> friendships;
+        //Номера строк файла для записей из соответствующих списков
+        private final List<Long> userLines = new ArrayList<>();
+        private final List<Long> filmLines = new ArrayList<>();
+        private final List<Long> likeLines = new ArrayList<>();
+        private final List<Long> friendshipLines = new ArrayList<>();
+
+        private Batch(int size) {
+            users = new ArrayList<>(size);
+            films = new ArrayList<>(size);
+            likes = new ArrayList<>(size);
+            friendships = new ArrayList<>(size);
+        }
+
+        private int size() {
+            return users.size() + films.size() + likes.size() + friendships.size();
+        }
+
+        private void clear() {
+            users.clear();
+            films.clear();
+            likes.clear();
+            friendships.clear();
+            userLines.clear();
+            filmLines.clear();
+            likeLines.clear();
+            friendshipLines.clear();
+        }
+    }
+}
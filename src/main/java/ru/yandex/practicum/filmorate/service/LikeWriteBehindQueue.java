@@ -0,0 +1,230 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+//Отложенная запись лайков: лайк подтверждается, как только попал в очередь, а в БД уходит пачкой.
+//В очереди на пару фильм-пользователь хранится одна операция, поэтому лайк и следующая за ним отмена
+//взаимно уничтожаются. Текущее состояние лайка берётся из RecommendationEngine, где уже учтена очередь.
+//Включается свойством filmorate.likes.write-behind.enabled (по умолчанию выключено).
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+public class LikeWriteBehindQueue {
+    private final FilmStorage filmStorage;
+    private final RecommendationEngine recommendationEngine;
+    private final int capacity;
+    private final int batchSize;
+    private final Map<Like, Operation> pending = new LinkedHashMap<>();
+    //Не synchronized: под замком выполняется onChange, а монитор закрепил бы виртуальный поток за несущим
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    //Под pendingLock: на сколько изменится счётчик фильма, когда очередь дойдёт до БД
+    private final Map<Long, Long> pendingLikes = new HashMap<>();
+    //Пачки пишутся по одной и по порядку, иначе поздняя отмена могла бы обогнать сам лайк
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Autowired
+    public LikeWriteBehindQueue(FilmStorage filmStorage, RecommendationEngine recommendationEngine,
+                                @Value("${filmorate.likes.write-behind.capacity:100000}") int capacity,
+                                @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize) {
+        this.filmStorage = filmStorage;
+        this.recommendationEngine = recommendationEngine;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+    }
+
+    //Ставит в очередь лайк (like = true) или его отмену. onChange выполняется, только если состояние
+    //лайка изменилось, и под тем же замком, что и очередь: индексы обновляются в том же порядке, что и она.
+    //Если очередь заполнена, вызывающий поток сам записывает её в БД - так нагрузка сдерживается скоростью БД
+    public boolean offer(long filmId, long userId, boolean like, Runnable onChange) {
+        return offer(filmId, userId, like, onChange, null);
+    }
+
+    //onDropped откатывает onChange лайка, который не удалось записать: фильм или пользователь удалён раньше,
+    //чем лайк дошёл до БД. Для отмены лайка отката нет - удалённой строки в БД уже нет
+    public boolean offer(long filmId, long userId, boolean like, Runnable onChange, Runnable onDropped) {
+        final Like key = new Like(filmId, userId);
+        while (true) {
+            pendingLock.lock();
+            try {
+                final Operation queued = pending.get(key);
+                final boolean liked = queued != null ? queued.like : recommendationEngine.isLiked(userId, filmId);
+                if (liked == like) {
+                    return false;
+                }
+                if (queued != null) {
+                    pending.remove(key);
+                    count(filmId, queued.like ? -1 : 1);
+                    onChange.run();
+                    return true;
+                }
+                if (pending.size() < capacity) {
+                    pending.put(key, new Operation(like, onDropped));
+                    count(filmId, like ? 1 : -1);
+                    onChange.run();
+                    return true;
+                }
+            } finally {
+                pendingLock.unlock();
+            }
+            log.debug("Очередь лайков заполнена, запись в БД выполняет вызывающий поток.");
+            flush();
+        }
+    }
+
+    public int size() {
+        pendingLock.lock();
+        try {
+            return pending.size();
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    //Счётчики лайков из хранилища с поправкой на очередь. Пачки в это время не пишутся, поэтому каждый
+    //лайк учитывается один раз: либо в хранилище, либо в очереди
+    public Map<Long, Long> withPending(Supplier<Map<Long, Long>> stored) {
+        flushLock.lock();
+        try {
+            final Map<Long, Long> counts = new HashMap<>(stored.get());
+            pendingLock.lock();
+            try {
+                pendingLikes.forEach((filmId, delta) -> counts.computeIfPresent(filmId, (id, count) -> count + delta));
+            } finally {
+                pendingLock.unlock();
+            }
+            return counts;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //Записывает в БД всё, что было в очереди на момент вызова, пачками по batchSize
+    @Scheduled(initialDelayString = "${filmorate.likes.write-behind.flush-interval-ms:200}",
+            fixedDelayString = "${filmorate.likes.write-behind.flush-interval-ms:200}")
+    public void flush() {
+        final List<Map.Entry<Like, Operation>> dropped = new ArrayList<>();
+        flushLock.lock();
+        try {
+            List<Map.Entry<Like, Operation>> batch;
+            while (!(batch = drain()).isEmpty()) {
+                write(batch, dropped);
+                written(batch);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        //Откат меняет рейтинг, а его перестройка ждёт flushLock под своей блокировкой: откаты - после снятия замка
+        for (Map.Entry<Like, Operation> entry : dropped) {
+            dropped(entry.getKey(), entry.getValue().onDropped);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        log.debug("Очередь лайков записана в БД перед остановкой.");
+    }
+
+    private List<Map.Entry<Like, Operation>> drain() {
+        pendingLock.lock();
+        try {
+            final List<Map.Entry<Like, Operation>> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+            final Iterator<Map.Entry<Like, Operation>> iterator = pending.entrySet().iterator();
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                final Map.Entry<Like, Operation> entry = iterator.next();
+                batch.add(Map.entry(entry.getKey(), entry.getValue()));
+                iterator.remove();
+            }
+            return batch;
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    //Пачка записана или отброшена: поправка на неё больше не нужна
+    private void written(List<Map.Entry<Like, Operation>> batch) {
+        pendingLock.lock();
+        try {
+            for (Map.Entry<Like, Operation> entry : batch) {
+                count(entry.getKey().getFilmId(), entry.getValue().like ? -1 : 1);
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    private void count(long filmId, long delta) {
+        pendingLikes.merge(filmId, delta, (count, change) -> count + change == 0 ? null : count + change);
+    }
+
+    private void write(List<Map.Entry<Like, Operation>> batch, List<Map.Entry<Like, Operation>> dropped) {
+        final List<Like> added = new ArrayList<>();
+        final List<Like> deleted = new ArrayList<>();
+        for (Map.Entry<Like, Operation> entry : batch) {
+            (entry.getValue().like ? added : deleted).add(entry.getKey());
+        }
+        try {
+            filmStorage.applyLikes(added, deleted);
+        } catch (DataAccessException e) {
+            //Фильм или пользователь мог быть удалён, пока лайк ждал в очереди: пишем по одному и пропускаем такие
+            log.warn("Пачка лайков не записана, запись по одному: " + e.getMessage());
+            for (Map.Entry<Like, Operation> entry : batch) {
+                final boolean like = entry.getValue().like;
+                try {
+                    filmStorage.applyLikes(like ? List.of(entry.getKey()) : List.of(),
+                            like ? List.of() : List.of(entry.getKey()));
+                } catch (DataAccessException rowError) {
+                    log.warn(String.format("Лайк фильма %d пользователем %d не записан: %s",
+                            entry.getKey().getFilmId(), entry.getKey().getUserId(), rowError.getMessage()));
+                    if (like) {
+                        dropped.add(entry);
+                    }
+                }
+            }
+        }
+        log.debug(String.format("Записано лайков: %d, отмен: %d.", added.size(), deleted.size()));
+    }
+
+    //Если при удалении фильма или пользователя лайк уже убран из индексов, откатывать нечего.
+    //Откат нужен, когда лайк попал в очередь уже после удаления и индексы его учли
+    private void dropped(Like like, Runnable onDropped) {
+        pendingLock.lock();
+        try {
+            if (onDropped != null && !pending.containsKey(like)
+                    && recommendationEngine.isLiked(like.getUserId(), like.getFilmId())) {
+                onDropped.run();
+            }
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    private static final class Operation {
+        //true - лайк нужно записать, false - удалить
+        private final boolean like;
+        private final Runnable onDropped;
+
+        private Operation(boolean like, Runnable onDropped) {
+            this.like = like;
+            this.onDropped = onDropped;
+        }
+    }
+}
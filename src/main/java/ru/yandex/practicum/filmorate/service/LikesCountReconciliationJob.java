@@ -0,0 +1,39 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.database.FilmDbStorage;
+
+//Фоновая сверка денормализованного счётчика FILMS.LIKES_COUNT с таблицей LIKES.
+//Рейтинг популярности строился по старым счётчикам, поэтому после исправления он перечитывает их
+@Component
+@Slf4j
+public class LikesCountReconciliationJob {
+    private final FilmDbStorage filmDbStorage;
+    private final PopularityIndex popularityIndex;
+    private final ResourceVersions versions;
+
+    @Autowired
+    public LikesCountReconciliationJob(FilmDbStorage filmDbStorage, ObjectProvider<PopularityIndex> popularityIndex,
+                                       ResourceVersions versions) {
+        this.filmDbStorage = filmDbStorage;
+        this.popularityIndex = popularityIndex.getIfAvailable();
+        this.versions = versions;
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.likes-count.reconcile-interval-ms:600000}",
+            fixedDelayString = "${filmorate.likes-count.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        int films = filmDbStorage.reconcileLikesCount();
+        if (films > 0) {
+            log.warn(String.format("Исправлен счётчик лайков у %d фильмов.", films));
+            if (popularityIndex != null) {
+                popularityIndex.syncLikes();
+            }
+            versions.popularChanged();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+//Сериализованные ответы /films/popular по count, genreId и year. ETag ответа - версия рейтинга из
+//ResourceVersions, при которой он собран: после лайка или изменения фильма версия другая, и ответ
+//собирается заново. Попадания и промахи видны в метриках кэша popular-feed
+@Component
+public class PopularFeedCache {
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final ResourceVersions versions;
+    private final Cache<String, Feed> feeds;
+
+    @Autowired
+    public PopularFeedCache(FilmService filmService, ObjectMapper objectMapper, ResourceVersions versions,
+                            MeterRegistry registry,
+                            @Value("${filmorate.popular-feed.maximum-size:256}") long maximumSize) {
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.versions = versions;
+        this.feeds = CaffeineCacheMetrics.monitor(registry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .<String, Feed>build(), "popular-feed");
+    }
+
+    //Версия берётся до чтения топа: запись, пришедшая во время сборки, сменит её, и ответ соберётся снова
+    public Feed get(int count, Integer genreId, Integer year) {
+        final String tag = versions.popularTag();
+        final String key = count + ":" + genreId + ":" + year;
+        final Feed cached = feeds.getIfPresent(key);
+        if (cached != null && cached.eTag.equals(tag)) {
+            return cached;
+        }
+        final Feed feed = new Feed(serialize(filmService.getPopularFilms(count, genreId, year)), tag);
+        feeds.put(key, feed);
+        return feed;
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать ответ", e);
+        }
+    }
+
+    public static final class Feed {
+        private final byte[] body;
+        private final String eTag;
+
+        private Feed(byte[] body, String eTag) {
+            this.body = body;
+            this.eTag = eTag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+//Рейтинг фильмов по количеству лайков в памяти: чтение топа не обращается к БД.
+//Кроме общего рейтинга ведутся отдельные рейтинги по каждому жанру и году выпуска.
+//Полная перестройка (запуск, импорт) собирает новые рейтинги и подменяет ими текущие, читатели видят старые
+//до подмены. Изменения фильмов, пришедшие во время перестройки, повторяются на новых рейтингах перед подменой,
+//а у фильмов, чьи лайки за это время менялись, число лайков перед подменой перечитывается из хранилища.
+//Включается свойством filmorate.popularity-index.enabled (по умолчанию включён).
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.popularity-index.enabled", havingValue = "true", matchIfMissing = true)
+public class PopularityIndex {
+    private static final Comparator<Rank> BY_LIKES_DESC = Comparator
+            .comparingLong((Rank rank) -> rank.likes).reversed()
+            .thenComparingLong(rank -> rank.filmId);
+    //Сколько фильмов из топов держится в памяти, чтобы отдавать топ без обращения к хранилищу
+    private static final long CACHED_FILMS = 10_000;
+    //Сколько раз топ читается без блокировки, прежде чем взять её
+    private static final int OPTIMISTIC_SCANS = 3;
+
+    private final FilmStorage filmStorage;
+    private final LikeWriteBehindQueue likeQueue;
+    private volatile Rankings rankings = new Rankings();
+    //Изменения берут блокировку на чтение, подмена рейтингов и обход топа после неудачных попыток - на запись
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    //Журнал изменений на время перестройки, иначе null
+    private Journal pending;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final Cache<Long, Film> films = Caffeine.newBuilder().maximumSize(CACHED_FILMS).build();
+    //Растёт при каждом изменении фильма: фильм, прочитанный до изменения, не попадает в кэш после него
+    private final AtomicLong filmChanges = new AtomicLong();
+
+    public PopularityIndex(FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+        this.likeQueue = null;
+    }
+
+    @Autowired
+    public PopularityIndex(FilmStorage filmStorage, ObjectProvider<LikeWriteBehindQueue> likeQueue) {
+        this.filmStorage = filmStorage;
+        this.likeQueue = likeQueue.getIfAvailable();
+    }
+
+    //Собирает рейтинги заново: число лайков берётся из FILMS.LIKES_COUNT, жанры и годы - из самих фильмов.
+    //Журнал начинается до чтения счётчиков: лайк, записанный после чтения, будет перечитан при подмене
+    @PostConstruct
+    public void warmUp() {
+        rebuildLock.lock();
+        try {
+            startJournal();
+            final Map<Long, Long> counts = likesCount(filmStorage::findLikesCount);
+            final Rankings rebuilt = new Rankings();
+            filmStorage.streamAll(film -> rebuilt.add(film.getId(), Facets.of(film),
+                    counts.getOrDefault(film.getId(), 0L)));
+            filmChanges.incrementAndGet();
+            films.invalidateAll();
+            swap(rebuilt);
+            log.debug(String.format("Рейтинг популярности загружен: %d фильмов.", rebuilt.likes.size()));
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public void addFilm(Film film) {
+        final Facets filmFacets = Facets.of(film);
+        apply(current -> current.add(film.getId(), filmFacets, 0));
+    }
+
+    //Жанры и год фильма могли измениться: фильм переносится в рейтинги новых жанров и года
+    public void updateFilm(Film film) {
+        final Facets filmFacets = Facets.of(film);
+        apply(current -> current.update(film.getId(), filmFacets));
+        forgetFilm(film.getId());
+    }
+
+    public void removeFilm(long filmId) {
+        apply(current -> current.remove(filmId));
+        forgetFilm(filmId);
+    }
+
+    public void addLike(long filmId) {
+        like(filmId, 1);
+    }
+
+    public void deleteLike(long filmId) {
+        like(filmId, -1);
+    }
+
+    //Запись лайков в хранилище нужно выполнять под этой блокировкой вместе с их учётом в рейтинге: перестройка
+    //перечитывает счётчики под блокировкой на запись и не застанет лайк, который уже в хранилище, но ещё не в рейтинге
+    public Lock likesLock() {
+        return swapLock.readLock();
+    }
+
+    //Лайки удалённого пользователя: у каждого фильма, который он лайкнул, счётчик уменьшается на один
+    public void removeLikes(List<Long> filmIds) {
+        for (long filmId : filmIds) {
+            deleteLike(filmId);
+        }
+    }
+
+    //Удалены все пользователи, а с ними и все лайки: рейтинги собираются с нулём лайков из уже известных
+    //жанров и годов фильмов, без чтения хранилища
+    public void clearLikes() {
+        rebuildLock.lock();
+        try {
+            startJournal();
+            rebuildLikes(filmId -> 0);
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    //Счётчики в хранилище исправлены в обход сервисов: число лайков перечитывается, жанры и годы остаются прежними
+    public void syncLikes() {
+        rebuildLock.lock();
+        try {
+            startJournal();
+            final Map<Long, Long> counts = likesCount(filmStorage::findLikesCount);
+            rebuildLikes(filmId -> counts.getOrDefault(filmId, 0L));
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public void clear() {
+        rebuildLock.lock();
+        try {
+            filmChanges.incrementAndGet();
+            films.invalidateAll();
+            swap(new Rankings());
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public long getLikes(long filmId) {
+        return rankings.likes.getOrDefault(filmId, 0L);
+    }
+
+    public int size() {
+        return rankings.likes.size();
+    }
+
+    //id самых популярных фильмов: при равенстве лайков выше фильм с меньшим id, как и в БД
+    public List<Long> getTop(int count) {
+        return getTop(count, null, null);
+    }
+
+    //То же для фильмов заданного жанра и (или) года
+    public List<Long> getTop(int count, Integer genreId, Integer year) {
+        return scan(current -> current.top(count, genreId, year));
+    }
+
+    //До count фильмов общего рейтинга, принятых фильтром, в порядке рейтинга
+    public List<Long> getTop(int count, LongPredicate accepted) {
+        return scan(current -> current.top(count, accepted));
+    }
+
+    //Обход без перестановок: фильм не пропускается и не повторяется. Если лайки не прекращаются и обход
+    //каждый раз пересекается с перестановкой, он выполняется под блокировкой, которая ненадолго останавливает изменения
+    private List<Long> scan(Function<Rankings, List<Long>> top) {
+        for (int attempt = 0; attempt < OPTIMISTIC_SCANS; attempt++) {
+            final List<Long> found = rankings.tryScan(top);
+            if (found != null) {
+                return found;
+            }
+        }
+        swapLock.writeLock().lock();
+        try {
+            return top.apply(rankings);
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    //Сами фильмы топа. Фильмы берутся из памяти, из хранилища читаются только ещё не загруженные
+    public List<Film> getTopFilms(int count, Integer genreId, Integer year) {
+        final List<Long> ids = getTop(count, genreId, year);
+        final Map<Long, Film> found = new HashMap<>(films.getAllPresent(ids));
+        if (found.size() < ids.size()) {
+            final List<Long> missing = new ArrayList<>(ids.size() - found.size());
+            for (Long id : ids) {
+                if (!found.containsKey(id)) {
+                    missing.add(id);
+                }
+            }
+            final long changes = filmChanges.get();
+            final List<Film> loaded = filmStorage.findByIds(missing);
+            for (Film film : loaded) {
+                found.put(film.getId(), film);
+            }
+            for (Film film : loaded) {
+                films.asMap().compute(film.getId(), (id, cached) -> filmChanges.get() == changes ? film : cached);
+            }
+        }
+        final List<Film> top = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            final Film film = found.get(id);
+            if (film != null) {
+                top.add(film);
+            }
+        }
+        return top;
+    }
+
+    private void forgetFilm(long filmId) {
+        filmChanges.incrementAndGet();
+        films.invalidate(filmId);
+    }
+
+    private void apply(Consumer<Rankings> change) {
+        swapLock.readLock().lock();
+        try {
+            change.accept(rankings);
+            if (pending != null) {
+                pending.changes.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    //Лайк не повторяется на новых рейтингах: в прочитанных счётчиках он мог уже быть
+    private void like(long filmId, long delta) {
+        swapLock.readLock().lock();
+        try {
+            rankings.change(filmId, delta);
+            if (pending != null) {
+                pending.liked.add(filmId);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    //Число лайков по хранилищу, а при отложенной записи - с поправкой на ещё не записанную очередь
+    private Map<Long, Long> likesCount(Supplier<Map<Long, Long>> stored) {
+        return likeQueue == null ? stored.get() : likeQueue.withPending(stored);
+    }
+
+    private void rebuildLikes(LongUnaryOperator count) {
+        final Rankings rebuilt = new Rankings();
+        rankings.facets.forEach((filmId, filmFacets) -> rebuilt.add(filmId, filmFacets, count.applyAsLong(filmId)));
+        swap(rebuilt);
+    }
+
+    private void startJournal() {
+        swapLock.writeLock().lock();
+        try {
+            pending = new Journal();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    //Под блокировкой на запись лайки не пишутся, поэтому перечитанные счётчики точные
+    private void swap(Rankings rebuilt) {
+        swapLock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.changes.forEach(change -> change.accept(rebuilt));
+                if (!pending.liked.isEmpty()) {
+                    final List<Long> liked = new ArrayList<>(pending.liked);
+                    final Map<Long, Long> counts = likesCount(() -> filmStorage.findLikesCount(liked));
+                    liked.forEach(filmId -> rebuilt.set(filmId, counts.getOrDefault(filmId, 0L)));
+                }
+                pending = null;
+            }
+            rankings = rebuilt;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    private static final class Journal {
+        private final Queue<Consumer<Rankings>> changes = new ConcurrentLinkedQueue<>();
+        //Фильмы, чьи лайки менялись во время перестройки
+        private final Set<Long> liked = ConcurrentHashMap.newKeySet();
+    }
+
+    //Один набор рейтингов: общий, по жанрам и по годам
+    private static final class Rankings {
+        private final Map<Long, Long> likes = new ConcurrentHashMap<>();
+        private final Map<Long, Facets> facets = new ConcurrentHashMap<>();
+        private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>(BY_LIKES_DESC);
+        private final Map<Integer, ConcurrentSkipListSet<Rank>> byGenre = new ConcurrentHashMap<>();
+        private final Map<Integer, ConcurrentSkipListSet<Rank>> byYear = new ConcurrentHashMap<>();
+        //Начатые и законченные перестановки: обход, за время которого они менялись, мог пропустить фильм
+        private final AtomicLong movesStarted = new AtomicLong();
+        private final AtomicLong movesFinished = new AtomicLong();
+
+        private void add(long filmId, Facets filmFacets, long count) {
+            likes.computeIfAbsent(filmId, id -> {
+                facets.put(id, filmFacets);
+                final Rank rank = new Rank(id, count);
+                ranking.add(rank);
+                bucket(rank, filmFacets, true);
+                return count;
+            });
+        }
+
+        //Общий рейтинг не меняется, фильм переносится только между рейтингами жанров и годов
+        private void update(long filmId, Facets filmFacets) {
+            likes.computeIfPresent(filmId, (id, count) -> {
+                final Rank rank = new Rank(id, count);
+                bucket(rank, filmFacets, true);
+                final Facets previous = facets.put(id, filmFacets);
+                if (previous != null) {
+                    bucket(rank, previous.without(filmFacets), false);
+                }
+                return count;
+            });
+        }
+
+        private void remove(long filmId) {
+            likes.computeIfPresent(filmId, (id, count) -> {
+                final Rank rank = new Rank(id, count);
+                ranking.remove(rank);
+                bucket(rank, facets.remove(id), false);
+                return null;
+            });
+        }
+
+        //compute выполняется атомарно для ключа, поэтому перестановка не теряет параллельные изменения.
+        //Обход, который в это время стоит между новым и старым местом фильма, может его пропустить,
+        //поэтому перестановки считаются, а tryTop по счётчикам отбрасывает такой обход
+        private void change(long filmId, long delta) {
+            move(filmId, count -> count + delta);
+        }
+
+        private void set(long filmId, long count) {
+            move(filmId, previous -> count);
+        }
+
+        private void move(long filmId, LongUnaryOperator likesOf) {
+            movesStarted.incrementAndGet();
+            try {
+                likes.computeIfPresent(filmId, (id, count) -> {
+                    final long updated = likesOf.applyAsLong(count);
+                    if (updated == count) {
+                        return count;
+                    }
+                    final Facets filmFacets = facets.get(id);
+                    final Rank added = new Rank(id, updated);
+                    final Rank removed = new Rank(id, count);
+                    ranking.add(added);
+                    bucket(added, filmFacets, true);
+                    ranking.remove(removed);
+                    bucket(removed, filmFacets, false);
+                    return updated;
+                });
+            } finally {
+                movesFinished.incrementAndGet();
+            }
+        }
+
+        //Результат обхода, если за это время не было перестановок, иначе null. Законченные читаются раньше
+        //начатых: совпадение значит, что в этот момент ни одна перестановка не выполнялась
+        private List<Long> tryScan(Function<Rankings, List<Long>> top) {
+            final long finished = movesFinished.get();
+            if (movesStarted.get() != finished) {
+                return null;
+            }
+            final List<Long> found = top.apply(this);
+            return movesStarted.get() == finished ? found : null;
+        }
+
+        private List<Long> top(int count, LongPredicate accepted) {
+            final List<Long> top = new ArrayList<>(Math.min(count, likes.size()));
+            final Iterator<Rank> iterator = ranking.iterator();
+            while (top.size() < count && iterator.hasNext()) {
+                final long filmId = iterator.next().filmId;
+                if (accepted.test(filmId)) {
+                    top.add(filmId);
+                }
+            }
+            return top;
+        }
+
+        //Если заданы и жанр, и год, обходится меньший из двух рейтингов, а второе условие проверяется
+        //по жанрам и году фильма
+        private List<Long> top(int count, Integer genreId, Integer year) {
+            final NavigableSet<Rank> scanned;
+            if (genreId == null && year == null) {
+                scanned = ranking;
+            } else {
+                final NavigableSet<Rank> genreRanking = genreId == null ? null : byGenre.getOrDefault(genreId, EMPTY);
+                final NavigableSet<Rank> yearRanking = year == null ? null : byYear.getOrDefault(year, EMPTY);
+                if (genreRanking == null) {
+                    scanned = yearRanking;
+                } else if (yearRanking == null || genreRanking.size() <= yearRanking.size()) {
+                    scanned = genreRanking;
+                } else {
+                    scanned = yearRanking;
+                }
+            }
+            final List<Long> top = new ArrayList<>(Math.min(count, likes.size()));
+            final Iterator<Rank> iterator = scanned.iterator();
+            while (top.size() < count && iterator.hasNext()) {
+                final long filmId = iterator.next().filmId;
+                final Facets filmFacets = facets.get(filmId);
+                if (filmFacets != null && filmFacets.matches(genreId, year)) {
+                    top.add(filmId);
+                }
+            }
+            return top;
+        }
+
+        private void bucket(Rank rank, Facets filmFacets, boolean add) {
+            if (filmFacets == null) {
+                return;
+            }
+            for (int genreId : filmFacets.genreIds) {
+                update(byGenre.computeIfAbsent(genreId, id -> new ConcurrentSkipListSet<>(BY_LIKES_DESC)), rank, add);
+            }
+            if (filmFacets.year != null) {
+                update(byYear.computeIfAbsent(filmFacets.year, id -> new ConcurrentSkipListSet<>(BY_LIKES_DESC)), rank, add);
+            }
+        }
+
+        private static void update(ConcurrentSkipListSet<Rank> set, Rank rank, boolean add) {
+            if (add) {
+                set.add(rank);
+            } else {
+                set.remove(rank);
+            }
+        }
+    }
+
+    private static final ConcurrentSkipListSet<Rank> EMPTY = new ConcurrentSkipListSet<>(BY_LIKES_DESC);
+
+    //Жанры и год выпуска фильма — то, по чему он раскладывается по рейтингам
+    private static final class Facets {
+        private final int[] genreIds;
+        private final Integer year;
+
+        private Facets(int[] genreIds, Integer year) {
+            this.genreIds = genreIds;
+            this.year = year;
+        }
+
+        private static Facets of(Film film) {
+            final int[] genreIds = film.getGenres() == null ? new int[0]
+                    : film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+            return new Facets(genreIds, film.getReleaseDate() == null ? null : film.getReleaseDate().getYear());
+        }
+
+        //Жанры и год, которых нет в other: из их рейтингов фильм нужно убрать
+        private Facets without(Facets other) {
+            final int[] removed = Arrays.stream(genreIds)
+                    .filter(id -> !other.hasGenre(id))
+                    .toArray();
+            return new Facets(removed, year != null && !year.equals(other.year) ? year : null);
+        }
+
+        private boolean hasGenre(int genreId) {
+            for (int id : genreIds) {
+                if (id == genreId) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(Integer genreId, Integer year) {
+            if (year != null && !year.equals(this.year)) {
+                return false;
+            }
+            return genreId == null || hasGenre(genreId);
+        }
+    }
+
+    private static final class Rank {
+        private final long filmId;
+        private final long likes;
+
+        private Rank(long filmId, long likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+//Рекомендации фильмов по лайкам похожих пользователей. Матрица пользователь × фильм хранится
+//в памяти построчно: для каждого пользователя сжатое битовое множество id понравившихся фильмов.
+//Похожесть — число общих лайков; рекомендуются фильмы ближайших соседей, которых у пользователя ещё нет.
+//Строка не меняется на месте: изменение подменяет её копией, поэтому подсчёт читает строки без блокировок.
+//Перестройка собирает новую матрицу рядом с текущей, как и PopularityIndex.
+@Slf4j
+@Component
+public class RecommendationEngine {
+    static final int PARALLEL_THRESHOLD = 1024;
+
+    private final FilmStorage filmStorage;
+    private final int neighbours;
+    private volatile Map<Long, RoaringBitmap> likesByUser = new ConcurrentHashMap<>();
+    //Удалённые пользователи: запоздавший лайк не возвращает их строку
+    private final Set<Long> removedUsers = ConcurrentHashMap.newKeySet();
+    //Изменения берут блокировку на чтение, подмена матрицы - на запись
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    //Журнал изменений на время перестройки, иначе null
+    private Queue<Consumer<Map<Long, RoaringBitmap>>> pending;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    @Autowired
+    public RecommendationEngine(FilmStorage filmStorage,
+                                @Value("${filmorate.recommendations.neighbours:20}") int neighbours) {
+        this.filmStorage = filmStorage;
+        this.neighbours = neighbours;
+    }
+
+    //Собирает матрицу по таблице лайков заново. До подмены читается прежняя, изменения, пришедшие
+    //во время сборки, повторяются на новой: лайк и его отмена для пары фильм-пользователь идемпотентны
+    @PostConstruct
+    public void warmUp() {
+        rebuildLock.lock();
+        try {
+            //Лайков удалённых раньше пользователей в БД уже нет, а их id могли вернуться при импорте.
+            //Удалённые во время сборки отмечаются заново и при повторе журнала строку не получат
+            removedUsers.clear();
+            startJournal();
+            final Map<Long, RoaringBitmap> rebuilt = new ConcurrentHashMap<>();
+            filmStorage.forEachLike(like -> rebuilt.computeIfAbsent(like.getUserId(), id -> new RoaringBitmap())
+                    .add((int) like.getFilmId()));
+            swap(rebuilt);
+            log.debug(String.format("Матрица лайков загружена: %d пользователей.", rebuilt.size()));
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    public void addLike(long userId, long filmId) {
+        apply(matrix -> matrix.compute(userId, (id, films) -> {
+            if (removedUsers.contains(id)) {
+                return films;
+            }
+            final RoaringBitmap changed = films == null ? new RoaringBitmap() : films.clone();
+            changed.add((int) filmId);
+            return changed;
+        }));
+    }
+
+    public void deleteLike(long userId, long filmId) {
+        apply(matrix -> matrix.computeIfPresent(userId, (id, films) -> without(films, filmId)));
+    }
+
+    public boolean isLiked(long userId, long filmId) {
+        final RoaringBitmap films = likesByUser.get(userId);
+        return films != null && films.contains((int) filmId);
+    }
+
+    public void removeFilm(long filmId) {
+        apply(matrix -> {
+            for (Long userId : matrix.keySet()) {
+                matrix.computeIfPresent(userId, (id, films) -> without(films, filmId));
+            }
+        });
+    }
+
+    //Отметка ставится раньше удаления строки: addLike, выполненный после удаления, её уже видит
+    public void removeUser(long userId) {
+        removedUsers.add(userId);
+        apply(matrix -> matrix.remove(userId));
+    }
+
+    public void clear() {
+        rebuildLock.lock();
+        try {
+            removedUsers.clear();
+            swap(new ConcurrentHashMap<>());
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    //id рекомендованных фильмов: по убыванию суммарной похожести соседей, при равенстве — по возрастанию id
+    public List<Long> recommend(long userId, int limit) {
+        final RoaringBitmap liked = snapshot(likesByUser.get(userId));
+        if (liked.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        final List<Neighbour> nearest = nearest(userId, liked);
+
+        final Map<Integer, Long> scores = new HashMap<>();
+        for (Neighbour neighbour : nearest) {
+            final RoaringBitmap candidates = RoaringBitmap.andNot(snapshot(likesByUser.get(neighbour.userId)), liked);
+            final IntIterator iterator = candidates.getIntIterator();
+            while (iterator.hasNext()) {
+                scores.merge(iterator.next(), (long) neighbour.overlap, Long::sum);
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(entry -> (long) entry.getKey())
+                .collect(Collectors.toList());
+    }
+
+    //Соседи с наибольшим числом общих лайков. Пересечения считаются параллельно, если пользователей много
+    private List<Neighbour> nearest(long userId, RoaringBitmap liked) {
+        Stream<Map.Entry<Long, RoaringBitmap>> users = likesByUser.entrySet().stream();
+        if (likesByUser.size() >= PARALLEL_THRESHOLD) {
+            users = users.parallel();
+        }
+        final List<Neighbour> similar = users
+                .filter(entry -> entry.getKey() != userId)
+                .map(entry -> new Neighbour(entry.getKey(), overlap(liked, entry.getValue())))
+                .filter(neighbour -> neighbour.overlap > 0)
+                .collect(Collectors.toList());
+
+        final PriorityQueue<Neighbour> top = new PriorityQueue<>(Neighbour.BY_OVERLAP_DESC.reversed());
+        for (Neighbour neighbour : similar) {
+            top.add(neighbour);
+            if (top.size() > neighbours) {
+                top.poll();
+            }
+        }
+        final List<Neighbour> nearest = new ArrayList<>(top);
+        nearest.sort(Neighbour.BY_OVERLAP_DESC);
+        return nearest;
+    }
+
+    private static int overlap(RoaringBitmap liked, RoaringBitmap films) {
+        return RoaringBitmap.andCardinality(liked, films);
+    }
+
+    private static RoaringBitmap snapshot(RoaringBitmap films) {
+        return films == null ? new RoaringBitmap() : films;
+    }
+
+    //Копия строки без фильма; строка без фильма остаётся как есть
+    private static RoaringBitmap without(RoaringBitmap films, long filmId) {
+        if (!films.contains((int) filmId)) {
+            return films;
+        }
+        final RoaringBitmap changed = films.clone();
+        changed.remove((int) filmId);
+        return changed;
+    }
+
+    private void apply(Consumer<Map<Long, RoaringBitmap>> change) {
+        swapLock.readLock().lock();
+        try {
+            change.accept(likesByUser);
+            if (pending != null) {
+                pending.add(change);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void startJournal() {
+        swapLock.writeLock().lock();
+        try {
+            pending = new ConcurrentLinkedQueue<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    private void swap(Map<Long, RoaringBitmap> rebuilt) {
+        swapLock.writeLock().lock();
+        try {
+            if (pending != null) {
+                pending.forEach(change -> change.accept(rebuilt));
+                pending = null;
+            }
+            likesByUser = rebuilt;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    private static final class Neighbour {
+        private static final Comparator<Neighbour> BY_OVERLAP_DESC = Comparator
+                .comparingInt((Neighbour neighbour) -> neighbour.overlap).reversed()
+                .thenComparingLong(neighbour -> neighbour.userId);
+
+        private final long userId;
+        private final int overlap;
+
+        private Neighbour(long userId, int overlap) {
+            this.userId = userId;
+            this.overlap = overlap;
+        }
+    }
+}
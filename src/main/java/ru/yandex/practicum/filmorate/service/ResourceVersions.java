@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Версии фильмов, пользователей, списков друзей и рейтинга популярности для ETag: по If-None-Match
+//контроллер отвечает 304, не обращаясь к хранилищу. Версии живут в памяти и растут по общему счётчику
+//после каждой записи через сервисы. В ETag входит метка запуска, поэтому теги прошлого запуска не совпадут.
+//Версию нужно брать до чтения данных: запись увеличивает её уже после изменения хранилища.
+@Component
+public class ResourceVersions {
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong clock = new AtomicLong();
+    //Версия всего, что не менялось после запуска или последнего reset
+    private volatile long baseline;
+    private final AtomicLong filmsChanged = new AtomicLong();
+    private final AtomicLong usersChanged = new AtomicLong();
+    private final Map<Long, Long> films = new ConcurrentHashMap<>();
+    private final Map<Long, Long> users = new ConcurrentHashMap<>();
+    private final Map<Long, Long> friends = new ConcurrentHashMap<>();
+
+    public String filmTag(long filmId) {
+        return tag(films.getOrDefault(filmId, 0L));
+    }
+
+    //Рейтинг меняет любой фильм и любой лайк
+    public String popularTag() {
+        return tag(filmsChanged.get());
+    }
+
+    public String userTag(long userId) {
+        return tag(users.getOrDefault(userId, 0L));
+    }
+
+    //Список друзей меняют дружбы самого пользователя и изменение или удаление любого пользователя
+    public String friendsTag(long userId) {
+        return tag(Math.max(friends.getOrDefault(userId, 0L), usersChanged.get()));
+    }
+
+    //Создание, изменение, удаление фильма или лайк к нему
+    public void filmChanged(long filmId) {
+        final long version = clock.incrementAndGet();
+        films.merge(filmId, version, Math::max);
+        filmsChanged.accumulateAndGet(version, Math::max);
+    }
+
+    //Число лайков исправлено в обход сервисов: меняется только рейтинг, версии фильмов остаются
+    public void popularChanged() {
+        filmsChanged.accumulateAndGet(clock.incrementAndGet(), Math::max);
+    }
+
+    public void userChanged(long userId) {
+        final long version = clock.incrementAndGet();
+        users.merge(userId, version, Math::max);
+        usersChanged.accumulateAndGet(version, Math::max);
+    }
+
+    //Удаление пользователя убирает и его лайки
+    public void userDeleted(long userId) {
+        userChanged(userId);
+        filmsChanged.accumulateAndGet(clock.incrementAndGet(), Math::max);
+    }
+
+    public void friendsChanged(long userId, long friendId) {
+        final long version = clock.incrementAndGet();
+        friends.merge(userId, version, Math::max);
+        friends.merge(friendId, version, Math::max);
+    }
+
+    //После массовых изменений в обход сервисов (импорт, удаление всех записей) меняются все версии
+    public void reset() {
+        baseline = clock.incrementAndGet();
+        films.clear();
+        users.clear();
+        friends.clear();
+    }
+
+    private String tag(long version) {
+        return "\"" + epoch + "-" + Math.max(version, baseline) + "\"";
+    }
+}
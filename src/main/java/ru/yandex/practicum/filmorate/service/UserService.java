@@ -2,12 +2,18 @@ package ru.yandex.practicum.filmorate.service;
 
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserService {
     List<User> findAll();
+    void streamAll(Consumer<User> consumer);
+    List<User> findPage(long afterId, int limit);
     User findById(long id) throws ObjectNotFoundException;
     User create(User user) throws ValidationException;
     User put(User user) throws ValidationException, ObjectNotFoundException;
@@ -16,5 +22,9 @@ public interface UserService {
     User addFriend(Long userId, Long friendId) throws ObjectNotFoundException;
     User deleteFriend(Long userId, Long friendId) throws ObjectNotFoundException;
     List<User> getFriends(Long userId) throws ObjectNotFoundException;
+    List<User> getFriendsPage(Long userId, long afterId, int limit) throws ObjectNotFoundException;
     List<User> getCommonFriends(Long userId, Long otherId) throws ObjectNotFoundException;
+    List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds) throws ObjectNotFoundException;
+    List<FriendSuggestion> getFriendSuggestions(Long userId, int limit) throws ObjectNotFoundException;
+    List<Film> getRecommendations(Long userId, int limit) throws ObjectNotFoundException;
 }
@@ -1,22 +1,40 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 public class UserServiceImpl implements UserService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
+    private final PopularityIndex popularityIndex;
+    private final RecommendationEngine recommendationEngine;
+    private final LikeWriteBehindQueue likeQueue;
+    private final ResourceVersions versions;
+    //Запись лайков в хранилище и их учёт в рейтинге; без рейтинга блокировка ни с чем не пересекается
+    private final Lock likesLock;
     private static final String NO_DATA_FOUND = "Данные о пользователе не заполнены.";
     private static final String EMPTY_EMAIL = "Адрес электронной почты не может быть пустым.";
     private static final String INVALID_EMAIL = "Адрес электронной почты должен содержать символ \"@\".";
@@ -24,9 +42,18 @@ public class UserServiceImpl implements UserService {
     private static final String BIRTHDAY_IN_THE_FUTURE = "Дата рождения не может быть в будущем.";
 
     @Autowired
-    public UserServiceImpl(FilmStorage filmStorage, UserStorage userStorage) {
+    public UserServiceImpl(FilmStorage filmStorage, UserStorage userStorage,
+                           ObjectProvider<PopularityIndex> popularityIndex,
+                           RecommendationEngine recommendationEngine,
+                           ObjectProvider<LikeWriteBehindQueue> likeQueue, ResourceVersions versions) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
+        this.popularityIndex = popularityIndex.getIfAvailable();
+        this.recommendationEngine = recommendationEngine;
+        this.likeQueue = likeQueue.getIfAvailable();
+        this.versions = versions;
+        this.likesLock = this.popularityIndex != null ? this.popularityIndex.likesLock()
+                : new ReentrantReadWriteLock().readLock();
     }
 
     @Override
@@ -34,6 +61,16 @@ public class UserServiceImpl implements UserService {
         return userStorage.findAll();
     }
 
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return userStorage.findPage(afterId, limit);
+    }
+
     @Override
     public User findById(long id) throws ObjectNotFoundException {
         return userStorage.findById(id);
@@ -46,8 +83,10 @@ public class UserServiceImpl implements UserService {
             log.debug("Ошибка при попытке добавления пользователя: " + message);
             throw new ValidationException(message);
         }
-        log.debug(String.format("Создан новый пользователь %d.", user.getId()));
-        return userStorage.create(user);
+        final User created = userStorage.create(user);
+        versions.userChanged(created.getId());
+        log.debug(String.format("Создан новый пользователь %d.", created.getId()));
+        return created;
     }
 
     @Override
@@ -57,19 +96,45 @@ public class UserServiceImpl implements UserService {
             log.debug("Ошибка при попытке редактирования пользователя: " + message);
             throw new ValidationException(message);
         }
+        final User updated = userStorage.put(user);
+        versions.userChanged(updated.getId());
         log.debug(String.format("Изменения для пользователя %d успешно приняты.", user.getId()));
-        return userStorage.put(user);
+        return updated;
     }
 
     @Override
     public void deleteAll() {
         log.debug("Все пользователи удалены из системы. :(");
+        if (likeQueue != null) {
+            likeQueue.flush();
+        }
         userStorage.deleteAll();
+        recommendationEngine.clear();
+        if (popularityIndex != null) {
+            popularityIndex.clearLikes();
+        }
+        versions.reset();
     }
 
     @Override
     public void delete(long id) throws ObjectNotFoundException {
-        userStorage.delete(id);
+        //Лайкнутые фильмы берутся из БД, поэтому лайки из очереди должны попасть туда раньше
+        if (likeQueue != null) {
+            likeQueue.flush();
+        }
+        likesLock.lock();
+        try {
+            //Лайки пользователя удаляются каскадно: в рейтинге уменьшаются только фильмы, которые он лайкнул
+            final List<Long> likedFilms = filmStorage.findLikedFilmIds(id);
+            userStorage.delete(id);
+            recommendationEngine.removeUser(id);
+            if (popularityIndex != null) {
+                popularityIndex.removeLikes(likedFilms);
+            }
+        } finally {
+            likesLock.unlock();
+        }
+        versions.userDeleted(id);
     }
 
     @Override
@@ -85,6 +150,7 @@ public class UserServiceImpl implements UserService {
             throw new ObjectNotFoundException(String.format("Пользователь с id %d не найден", friendId));
         }
         userStorage.addFriend(userId, friendId);
+        versions.friendsChanged(userId, friendId);
         log.debug(String.format("Пользователь %d добавил в друзья пользователя %d", userId, friendId));
         return user;
     }
@@ -102,6 +168,7 @@ public class UserServiceImpl implements UserService {
             throw new ObjectNotFoundException(String.format("Пользователь с id %d не найден", friendId));
         }
         if (userStorage.deleteFriend(userId, friendId)) {
+            versions.friendsChanged(userId, friendId);
             log.debug(String.format("Пользователь %d удалил из друзей пользователя %d", userId, friendId));
             return user;
         } else {
@@ -120,6 +187,16 @@ public class UserServiceImpl implements UserService {
         return userStorage.getFriends(userId);
     }
 
+    @Override
+    public List<User> getFriendsPage(Long userId, long afterId, int limit) throws ObjectNotFoundException {
+        User user = userStorage.findById(userId);
+        if (user == null) {
+            log.debug(String.format("Ошибка при попытке вывести список друзей. Пользователь с id %d не найден", userId));
+            throw new ObjectNotFoundException(String.format("Пользователь с id %d не найден", userId));
+        }
+        return userStorage.getFriendsPage(userId, afterId, limit);
+    }
+
     @Override
     public List<User> getCommonFriends(Long userId, Long otherId) throws ObjectNotFoundException {
         User user = userStorage.findById(userId);
@@ -135,9 +212,49 @@ public class UserServiceImpl implements UserService {
         return userStorage.getCommonFriends(userId,otherId);
     }
 
+    @Override
+    public List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds) throws ObjectNotFoundException {
+        userStorage.findById(userId);
+        //Все переданные пользователи проверяются одним чтением, а не по одному
+        final List<Long> distinctIds = otherIds.stream().distinct().collect(Collectors.toList());
+        final Set<Long> found = userStorage.findByIds(distinctIds).stream()
+                .map(User::getId)
+                .collect(Collectors.toSet());
+        for (Long otherId : distinctIds) {
+            if (!found.contains(otherId)) {
+                log.debug(String.format("Ошибка при подсчёте общих друзей. Пользователь с id %d не найден", otherId));
+                throw new ObjectNotFoundException(String.format("Пользователь с id %d не найден", otherId));
+            }
+        }
+        return userStorage.getMutualFriendsCounts(userId, otherIds);
+    }
+
+    @Override
+    public List<FriendSuggestion> getFriendSuggestions(Long userId, int limit) throws ObjectNotFoundException {
+        userStorage.findById(userId);
+        final List<MutualFriends> counts = userStorage.getFriendSuggestions(userId, limit);
+        final List<Long> ids = counts.stream().map(MutualFriends::getUserId).collect(Collectors.toList());
+        final Map<Long, User> users = userStorage.findByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        final List<FriendSuggestion> suggestions = new ArrayList<>(counts.size());
+        for (MutualFriends count : counts) {
+            final User user = users.get(count.getUserId());
+            if (user != null) {
+                suggestions.add(new FriendSuggestion(user, count.getMutualFriends()));
+            }
+        }
+        return suggestions;
+    }
+
+    @Override
+    public List<Film> getRecommendations(Long userId, int limit) throws ObjectNotFoundException {
+        userStorage.findById(userId);
+        return filmStorage.findByIds(recommendationEngine.recommend(userId, limit));
+    }
+
 
     //ДОПОЛНИТЕЛЬНЫЕ МЕТОДЫ
-    private String check(User user) throws ValidationException {
+    static String check(User user) throws ValidationException {
 
         String message = "";
         if (user == null) {
@@ -4,21 +4,33 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.MPARating;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     List<Film> findAll();
+    void streamAll(Consumer<Film> consumer);
+    List<Film> findPage(long afterId, int limit);
     Film findById(long id) throws ObjectNotFoundException;
+    List<Film> findByIds(List<Long> ids);
     Film create(Film film);
     Film put(Film film) throws ObjectNotFoundException;
     void deleteAll();
     void delete(long filmId) throws ObjectNotFoundException;
     boolean addLike(long filmId, long userId);
     boolean deleteLike(long filmId, long userId);
+    void applyLikes(List<Like> added, List<Like> deleted);
     List<Film> getPopularFilms(int count);
+    List<Film> getPopularFilms(int count, Integer genreId, Integer year);
+    Map<Long, Long> findLikesCount();
+    Map<Long, Long> findLikesCount(List<Long> filmIds);
+    void forEachLike(Consumer<Like> consumer);
+    List<Long> findLikedFilmIds(long userId);
 
     MPARating findMpaById(long id) throws ObjectNotFoundException;
 
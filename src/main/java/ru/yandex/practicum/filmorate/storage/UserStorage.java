@@ -1,13 +1,19 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     List<User> findAll();
+    void streamAll(Consumer<User> consumer);
+    List<User> findPage(long afterId, int limit);
     User findById(long id) throws ObjectNotFoundException;
+    List<User> findByIds(List<Long> ids);
     User create(User user);
     User put(User user) throws  ObjectNotFoundException;
     void deleteAll();
@@ -15,5 +21,9 @@ public interface UserStorage {
     void addFriend(Long userId, Long friendId);
     boolean deleteFriend(Long userId, Long friendId);
     List<User> getFriends(Long userId);
+    List<User> getFriendsPage(Long userId, long afterId, int limit);
     List<User> getCommonFriends(Long userId, Long otherId);
+    List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds);
+    List<MutualFriends> getFriendSuggestions(Long userId, int limit);
+    void forEachFriendship(Consumer<Friendship> consumer);
 }
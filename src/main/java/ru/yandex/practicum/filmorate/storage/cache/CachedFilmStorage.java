@@ -0,0 +1,225 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.CacheStatistics;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//Кэширует фильмы по id поверх хранилища в БД. Изменение и удаление фильма сбрасывают запись.
+//Наружу отдаются копии, чтобы вызывающий код не менял общий экземпляр в кэше. Прочитанный из БД фильм
+//попадает в кэш, только если за время чтения не было записей: иначе чтение до коммита вернуло бы в кэш
+//старую версию уже после сброса.
+//С копией БД в памяти (filmorate.read-replica.enabled) кэш не нужен и не создаётся.
+@Component
+@Primary
+@ConditionalOnProperty(name = "filmorate.read-replica.enabled", havingValue = "false", matchIfMissing = true)
+public class CachedFilmStorage implements FilmStorage {
+    private final FilmStorage filmStorage;
+    private final Cache<Long, Film> films;
+    //Растёт после каждой записи, загрузка кладёт фильм в кэш, только если значение не изменилось
+    private final AtomicLong changes = new AtomicLong();
+
+    @Autowired
+    public CachedFilmStorage(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                             @Value("${filmorate.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${filmorate.cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.filmStorage = filmStorage;
+        this.films = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return filmStorage.findAll();
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return filmStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public Film findById(long id) throws ObjectNotFoundException {
+        Film film = films.getIfPresent(id);
+        if (film == null) {
+            final long version = changes.get();
+            film = filmStorage.findById(id);
+            cache(film, version);
+        }
+        return copy(film);
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> ids) {
+        final Map<Long, Film> cached = films.getAllPresent(ids);
+        if (cached.size() == ids.size()) {
+            return orderByIds(ids, cached);
+        }
+        final long version = changes.get();
+        final List<Long> missing = new ArrayList<>(ids.size() - cached.size());
+        for (Long id : ids) {
+            if (!cached.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        final Map<Long, Film> loaded = new HashMap<>(cached);
+        for (Film film : filmStorage.findByIds(missing)) {
+            cache(film, version);
+            loaded.put(film.getId(), film);
+        }
+        return orderByIds(ids, loaded);
+    }
+
+    @Override
+    public Film create(Film film) {
+        return filmStorage.create(film);
+    }
+
+    @Override
+    public Film put(Film film) throws ObjectNotFoundException {
+        try {
+            return filmStorage.put(film);
+        } finally {
+            changes.incrementAndGet();
+            films.invalidate(film.getId());
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        filmStorage.deleteAll();
+        changes.incrementAndGet();
+        films.invalidateAll();
+    }
+
+    @Override
+    public void delete(long filmId) throws ObjectNotFoundException {
+        try {
+            filmStorage.delete(filmId);
+        } finally {
+            changes.incrementAndGet();
+            films.invalidate(filmId);
+        }
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        return filmStorage.addLike(filmId, userId);
+    }
+
+    @Override
+    public boolean deleteLike(long filmId, long userId) {
+        return filmStorage.deleteLike(filmId, userId);
+    }
+
+    @Override
+    public void applyLikes(List<Like> added, List<Like> deleted) {
+        filmStorage.applyLikes(added, deleted);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        return filmStorage.getPopularFilms(count);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        return filmStorage.getPopularFilms(count, genreId, year);
+    }
+
+    @Override
+    public Map<Long, Long> findLikesCount() {
+        return filmStorage.findLikesCount();
+    }
+
+    @Override
+    public Map<Long, Long> findLikesCount(List<Long> filmIds) {
+        return filmStorage.findLikesCount(filmIds);
+    }
+
+    @Override
+    public List<Long> findLikedFilmIds(long userId) {
+        return filmStorage.findLikedFilmIds(userId);
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        filmStorage.forEachLike(consumer);
+    }
+
+    @Override
+    public MPARating findMpaById(long id) throws ObjectNotFoundException {
+        return filmStorage.findMpaById(id);
+    }
+
+    @Override
+    public List<MPARating> findAllMpa() {
+        return filmStorage.findAllMpa();
+    }
+
+    @Override
+    public Genre findGenreById(long id) throws ObjectNotFoundException {
+        return filmStorage.findGenreById(id);
+    }
+
+    @Override
+    public List<Genre> findAllGenre() {
+        return filmStorage.findAllGenre();
+    }
+
+    public CacheStatistics getStatistics() {
+        final CacheStats stats = films.stats();
+        return new CacheStatistics(films.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.evictionCount(), stats.hitRate());
+    }
+
+    //Проверка версии и вставка атомарны относительно сброса записи: сброс идёт после увеличения счётчика
+    private void cache(Film film, long version) {
+        films.asMap().compute(film.getId(), (id, cached) -> changes.get() == version ? film : cached);
+    }
+
+    private static Film copy(Film film) {
+        return film.toBuilder()
+                .genres(film.getGenres() == null ? null : new ArrayList<>(film.getGenres()))
+                .build();
+    }
+
+    private static List<Film> orderByIds(List<Long> ids, Map<Long, Film> filmsById) {
+        final List<Film> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            final Film film = filmsById.get(id);
+            if (film != null) {
+                result.add(copy(film));
+            }
+        }
+        return result;
+    }
+}
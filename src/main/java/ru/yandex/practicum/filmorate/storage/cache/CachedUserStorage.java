@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.CacheStatistics;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+//Кэширует пользователей по id поверх хранилища в БД. Изменение и удаление пользователя сбрасывают запись.
+//Наружу отдаются копии, а загрузка из БД не кладёт в кэш пользователя, если за время чтения была запись.
+//С копией БД в памяти (filmorate.read-replica.enabled) кэш не нужен и не создаётся.
+@Component
+@Primary
+@ConditionalOnProperty(name = "filmorate.read-replica.enabled", havingValue = "false", matchIfMissing = true)
+public class CachedUserStorage implements UserStorage {
+    private final UserStorage userStorage;
+    private final Cache<Long, User> users;
+    //Растёт после каждой записи, загрузка кладёт пользователя в кэш, только если значение не изменилось
+    private final AtomicLong changes = new AtomicLong();
+
+    @Autowired
+    public CachedUserStorage(@Qualifier("userDbStorage") UserStorage userStorage,
+                             @Value("${filmorate.cache.maximum-size:10000}") long maximumSize,
+                             @Value("${filmorate.cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.userStorage = userStorage;
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public List<User> findAll() {
+        return userStorage.findAll();
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return userStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public User findById(long id) throws ObjectNotFoundException {
+        User user = users.getIfPresent(id);
+        if (user == null) {
+            final long version = changes.get();
+            final User loaded = userStorage.findById(id);
+            users.asMap().compute(id, (key, cached) -> changes.get() == version ? loaded : cached);
+            user = loaded;
+        }
+        return user.toBuilder().build();
+    }
+
+    @Override
+    public List<User> findByIds(List<Long> ids) {
+        return userStorage.findByIds(ids);
+    }
+
+    @Override
+    public User create(User user) {
+        return userStorage.create(user);
+    }
+
+    @Override
+    public User put(User user) throws ObjectNotFoundException {
+        try {
+            return userStorage.put(user);
+        } finally {
+            changes.incrementAndGet();
+            users.invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public void deleteAll() {
+        userStorage.deleteAll();
+        changes.incrementAndGet();
+        users.invalidateAll();
+    }
+
+    @Override
+    public void delete(long userId) throws ObjectNotFoundException {
+        try {
+            userStorage.delete(userId);
+        } finally {
+            changes.incrementAndGet();
+            users.invalidate(userId);
+        }
+    }
+
+    @Override
+    public void addFriend(Long userId, Long friendId) {
+        userStorage.addFriend(userId, friendId);
+    }
+
+    @Override
+    public boolean deleteFriend(Long userId, Long friendId) {
+        return userStorage.deleteFriend(userId, friendId);
+    }
+
+    @Override
+    public List<User> getFriends(Long userId) {
+        return userStorage.getFriends(userId);
+    }
+
+    @Override
+    public List<User> getFriendsPage(Long userId, long afterId, int limit) {
+        return userStorage.getFriendsPage(userId, afterId, limit);
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId, Long otherId) {
+        return userStorage.getCommonFriends(userId, otherId);
+    }
+
+    @Override
+    public List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds) {
+        return userStorage.getMutualFriendsCounts(userId, otherIds);
+    }
+
+    @Override
+    public List<MutualFriends> getFriendSuggestions(Long userId, int limit) {
+        return userStorage.getFriendSuggestions(userId, limit);
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> consumer) {
+        userStorage.forEachFriendship(consumer);
+    }
+
+    public CacheStatistics getStatistics() {
+        final CacheStats stats = users.stats();
+        return new CacheStatistics(users.estimatedSize(), stats.hitCount(), stats.missCount(),
+                stats.evictionCount(), stats.hitRate());
+    }
+}
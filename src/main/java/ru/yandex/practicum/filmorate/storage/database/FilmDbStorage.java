@@ -3,62 +3,119 @@ package ru.yandex.practicum.filmorate.storage.database;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.MPARating;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 
-@Component
-@Primary
+@Component("filmDbStorage")
 @Slf4j
 public class FilmDbStorage implements FilmStorage {
 
+    private static final int IN_BATCH_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    //Фильмы с жанрами одной выборкой: рейтинг и названия жанров берутся из справочника, а не из join с MPA и GENRES
+    private static final String FILMS_WITH_GENRES = "select F.*, FG.GENRE_ID from %s F "
+            + "left join FILM_GENRES FG on F.FILM_ID = FG.FILM_ID ";
+    private static final String FILMS_TABLE = "FILMS";
     private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataDictionary dictionary;
 
     @Autowired
-    public FilmDbStorage(JdbcTemplate jdbcTemplate) {
+    public FilmDbStorage(JdbcTemplate jdbcTemplate, ReferenceDataDictionary dictionary) {
         this.jdbcTemplate = jdbcTemplate;
+        this.dictionary = dictionary;
     }
 
     @Override
     public List<Film> findAll() {
-        final String sqlQuery = "select * from FILMS left join MPA M on FILMS.MPA_ID = M.MPA_ID";
-        final List<Film> films = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm);
-        if (films.size() == 0) {
-            return Collections.emptyList();
-        }
-        for (Film film : films) {
-            setGenre(film);
-        }
-        return films;
+        return queryFilms(String.format(FILMS_WITH_GENRES, FILMS_TABLE) + "order by F.FILM_ID, FG.GENRE_ID");
+    }
+
+    //Фильмы читаются курсором только вперёд и отдаются по одному, жанры приходят в той же выборке
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        //Сортировка только по FILM_ID идёт по индексу и не собирает результат целиком, а несколько жанров
+        //фильма упорядочиваются уже в памяти
+        final String sqlQuery = String.format(FILMS_WITH_GENRES, FILMS_TABLE) + "order by F.FILM_ID";
+        stream(jdbcTemplate, sqlQuery, (ResultSetExtractor<Void>) rs -> {
+            foldFilms(rs, film -> {
+                film.getGenres().sort(Comparator.comparingInt(Genre::getId));
+                consumer.accept(film);
+            });
+            return null;
+        });
+    }
+
+    //Страница фильмов с id больше afterId, по возрастанию id. LIMIT считает фильмы, а не строки с жанрами
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        final String page = "(select * from FILMS where FILM_ID > ? order by FILM_ID limit ?)";
+        return queryFilms(String.format(FILMS_WITH_GENRES, page) + "order by F.FILM_ID, FG.GENRE_ID",
+                afterId, limit);
     }
 
     @Override
     public Film findById(long id) throws ObjectNotFoundException {
-        final String sqlQuery = "select * from FILMS left join MPA M on FILMS.MPA_ID = M.MPA_ID where FILM_ID = ?";
-        final List<Film> films = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, id);
+        final List<Film> films = queryFilms(String.format(FILMS_WITH_GENRES, FILMS_TABLE)
+                + "where F.FILM_ID = ? order by FG.GENRE_ID", id);
         if (films.size() == 0) {
             log.debug(String.format("Фильм %d не найден.", id));
             throw new ObjectNotFoundException("Фильм не найден!");
         }
-        Film film = films.get(0);
-        setGenre(film);
-        return film;
+        return films.get(0);
     }
 
+    //Фильмы возвращаются в порядке переданных id, несуществующие id пропускаются
     @Override
+    public List<Film> findByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<Long, Film> filmsById = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += IN_BATCH_SIZE) {
+            final List<Long> batch = ids.subList(from, Math.min(from + IN_BATCH_SIZE, ids.size()));
+            final String sqlQuery = String.format(FILMS_WITH_GENRES, FILMS_TABLE)
+                    + "where F.FILM_ID in (" + String.join(",", Collections.nCopies(batch.size(), "?")) + ") "
+                    + "order by F.FILM_ID, FG.GENRE_ID";
+            for (Film film : queryFilms(sqlQuery, batch.toArray())) {
+                filmsById.put(film.getId(), film);
+            }
+        }
+        final List<Film> films = new ArrayList<>(filmsById.size());
+        for (Long id : ids) {
+            final Film film = filmsById.get(id);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return films;
+    }
+
+    @Override
+    @Transactional
     public Film create(Film film) {
         final String sqlQuery = "insert into FILMS(FILM_NAME, DESCRIPTION, DURATION, MPA_ID, RELEASE_DATE) " +
                 "values (?, ?, ?, ?, ?)";
@@ -94,17 +151,17 @@ public class FilmDbStorage implements FilmStorage {
         film.setId(keyHolder.getKey().longValue());
 
         //Обновить таблицу с жанрами
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            for (Genre g : film.getGenres()) {
-                String sqlQueryGenre = "insert into FILM_GENRES(FILM_ID, GENRE_ID) " + "values (?, ?)";
-                jdbcTemplate.update(sqlQueryGenre, film.getId(), g.getId());
-            }
+        if (film.getGenres() != null) {
+            final Set<Integer> genreIds = getGenreIds(film);
+            insertGenres(film.getId(), genreIds);
+            film.setGenres(toGenres(genreIds));
         }
 
         return film;
     }
 
     @Override
+    @Transactional
     public Film put(Film film) throws ObjectNotFoundException {
         String sqlQuery = "update FILMS set " +
                 "FILM_NAME = ?, DESCRIPTION = ?, DURATION = ?, MPA_ID = ? , RELEASE_DATE = ?" +
@@ -120,15 +177,18 @@ public class FilmDbStorage implements FilmStorage {
             log.debug(String.format("Фильм %d не найден.", film.getId()));
             throw new ObjectNotFoundException("Фильм не найден");
         }
-        //Обновить таблицу с жанрами
-        sqlQuery = "delete from FILM_GENRES where FILM_ID = ?";
-        jdbcTemplate.update(sqlQuery, film.getId());
-        if (film.getGenres() != null && !film.getGenres().isEmpty()) {
-            for (Genre g : film.getGenres()) {
-                sqlQuery = "merge into FILM_GENRES(FILM_ID, GENRE_ID) " + "values (?, ?)";
-                jdbcTemplate.update(sqlQuery, film.getId(), g.getId());
-            }
-            setGenre(film);
+        //Обновить таблицу с жанрами: меняются только добавленные и удалённые жанры
+        final Set<Integer> genreIds = getGenreIds(film);
+        final Set<Integer> currentIds = new TreeSet<>(jdbcTemplate.queryForList(
+                "select GENRE_ID from FILM_GENRES where FILM_ID = ?", Integer.class, film.getId()));
+        final Set<Integer> addedIds = new TreeSet<>(genreIds);
+        addedIds.removeAll(currentIds);
+        final Set<Integer> removedIds = new TreeSet<>(currentIds);
+        removedIds.removeAll(genreIds);
+        deleteGenres(film.getId(), removedIds);
+        insertGenres(film.getId(), addedIds);
+        if (film.getGenres() != null) {
+            film.setGenres(toGenres(genreIds));
         }
 
         return film;
@@ -151,96 +211,276 @@ public class FilmDbStorage implements FilmStorage {
     }
 
     @Override
+    @Transactional
     public boolean addLike(long filmId, long userId) {
         final String sqlQuery = "insert into LIKES(USER_ID, FILM_ID) " + "values (?, ?)";
-        return (jdbcTemplate.update(sqlQuery, userId, filmId) > 0);
+        if (jdbcTemplate.update(sqlQuery, userId, filmId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("update FILMS set LIKES_COUNT = LIKES_COUNT + 1 where FILM_ID = ?", filmId);
+        return true;
     }
 
     @Override
+    @Transactional
     public boolean deleteLike(long filmId, long userId) {
         String sqlQuery = "delete from LIKES where USER_ID = ? AND FILM_ID = ?";
-        return (jdbcTemplate.update(sqlQuery, userId, filmId) > 0);
+        if (jdbcTemplate.update(sqlQuery, userId, filmId) == 0) {
+            return false;
+        }
+        jdbcTemplate.update("update FILMS set LIKES_COUNT = LIKES_COUNT - 1 where FILM_ID = ?", filmId);
+        return true;
+    }
+
+    //Пачка лайков одной транзакцией. Уже существующие лайки не вставляются повторно,
+    //LIKES_COUNT затронутых фильмов пересчитывается по таблице
+    @Override
+    @Transactional
+    public void applyLikes(List<Like> added, List<Like> deleted) {
+        final List<Object[]> inserts = new ArrayList<>(added.size());
+        final Set<Long> filmIds = new TreeSet<>();
+        for (Like like : added) {
+            inserts.add(new Object[]{like.getUserId(), like.getFilmId(), like.getUserId(), like.getFilmId()});
+            filmIds.add(like.getFilmId());
+        }
+        final List<Object[]> deletes = new ArrayList<>(deleted.size());
+        for (Like like : deleted) {
+            deletes.add(new Object[]{like.getUserId(), like.getFilmId()});
+            filmIds.add(like.getFilmId());
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate("insert into LIKES(USER_ID, FILM_ID) select ?, ? "
+                    + "where not exists (select 1 from LIKES where USER_ID = ? AND FILM_ID = ?)", inserts);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate("delete from LIKES where USER_ID = ? AND FILM_ID = ?", deletes);
+        }
+        final List<Object[]> counts = new ArrayList<>(filmIds.size());
+        for (Long filmId : filmIds) {
+            counts.add(new Object[]{filmId, filmId});
+        }
+        if (!counts.isEmpty()) {
+            jdbcTemplate.batchUpdate("update FILMS set LIKES_COUNT = "
+                    + "(select COUNT(*) from LIKES where FILM_ID = ?) where FILM_ID = ?", counts);
+        }
     }
 
     @Override
     public List<Film> getPopularFilms(int count) {
-        final String sqlQuery = "select F.*, M.MPA_NAME, COUNT(L.USER_ID)from FILMS F "
-                + "left join LIKES L on F.film_id = L.film_id "
-                + "left join MPA M on F.MPA_ID = M.MPA_ID "
-                + "group by F.film_id, film_name, description, duration, f.mpa_id, m.mpa_id, m.mpa_name, release_date "
-                + "order by COUNT(L.USER_ID) desc LIMIT ?";
-        final List<Film> films = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeFilm, count);
-        if (films.size() == 0) {
-            return Collections.emptyList();
+        final String top = "(select * from FILMS order by LIKES_COUNT desc, FILM_ID LIMIT ?)";
+        return queryFilms(String.format(FILMS_WITH_GENRES, top)
+                + "order by F.LIKES_COUNT desc, F.FILM_ID, FG.GENRE_ID", count);
+    }
+
+    //Год сравнивается диапазоном дат, жанр — подзапросом по индексу FILM_GENRES(GENRE_ID, FILM_ID)
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        final StringBuilder top = new StringBuilder("(select * from FILMS F where 1 = 1");
+        final List<Object> params = new ArrayList<>();
+        if (genreId != null) {
+            top.append(" and F.FILM_ID in (select FILM_ID from FILM_GENRES where GENRE_ID = ?)");
+            params.add(genreId);
         }
-        for (Film film : films) {
-            setGenre(film);
+        if (year != null) {
+            top.append(" and F.RELEASE_DATE >= ? and F.RELEASE_DATE < ?");
+            params.add(LocalDate.of(year, 1, 1));
+            params.add(LocalDate.of(year + 1, 1, 1));
         }
-        return films;
+        top.append(" order by F.LIKES_COUNT desc, F.FILM_ID LIMIT ?)");
+        params.add(count);
+        return queryFilms(String.format(FILMS_WITH_GENRES, top)
+                + "order by F.LIKES_COUNT desc, F.FILM_ID, FG.GENRE_ID", params.toArray());
+    }
+
+    //Счётчик LIKES_COUNT ведётся вместе с LIKES, поэтому таблица лайков не агрегируется
+    @Override
+    public Map<Long, Long> findLikesCount() {
+        final Map<Long, Long> likes = new HashMap<>();
+        jdbcTemplate.query("select FILM_ID, LIKES_COUNT from FILMS", rs -> {
+            likes.put(rs.getLong("FILM_ID"), rs.getLong("LIKES_COUNT"));
+        });
+        return likes;
+    }
+
+    //Счётчики только заданных фильмов, тем же разбиением на пачки, что и findByIds
+    @Override
+    public Map<Long, Long> findLikesCount(List<Long> filmIds) {
+        final Map<Long, Long> likes = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += IN_BATCH_SIZE) {
+            final List<Long> batch = filmIds.subList(from, Math.min(from + IN_BATCH_SIZE, filmIds.size()));
+            jdbcTemplate.query("select FILM_ID, LIKES_COUNT from FILMS where FILM_ID in ("
+                    + String.join(",", Collections.nCopies(batch.size(), "?")) + ")", rs -> {
+                likes.put(rs.getLong("FILM_ID"), rs.getLong("LIKES_COUNT"));
+            }, batch.toArray());
+        }
+        return likes;
+    }
+
+    @Override
+    public List<Long> findLikedFilmIds(long userId) {
+        return jdbcTemplate.queryForList("select FILM_ID from LIKES where USER_ID = ? order by FILM_ID",
+                Long.class, userId);
+    }
+
+    //Все лайки одним проходом курсора, без сборки списка в памяти
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        stream(jdbcTemplate, "select FILM_ID, USER_ID from LIKES", rs -> {
+            consumer.accept(new Like(rs.getLong("FILM_ID"), rs.getLong("USER_ID")));
+        });
+    }
+
+    //Пересчитывает LIKES_COUNT по таблице LIKES для фильмов, у которых счётчик разошёлся с фактом
+    public int reconcileLikesCount() {
+        final String sqlQuery = "update FILMS F set LIKES_COUNT = "
+                + "(select COUNT(*) from LIKES L where L.FILM_ID = F.FILM_ID) "
+                + "where LIKES_COUNT <> (select COUNT(*) from LIKES L where L.FILM_ID = F.FILM_ID)";
+        return jdbcTemplate.update(sqlQuery);
     }
 
     @Override
     public MPARating findMpaById(long id) throws ObjectNotFoundException {
-        final String sqlQuery = "select * from MPA where MPA_ID = ?";
-        final List<MPARating> mpa = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeMpa, id);
-        if (mpa.size() == 0) {
+        final MPARating mpa = dictionary.getMpa(id);
+        if (mpa == null) {
             log.debug(String.format("Неизвестный рейтинг %d.", id));
             throw new ObjectNotFoundException("Неизвестный рейтинг");
         }
-        return mpa.get(0);
+        return mpa;
     }
 
     @Override
     public List<MPARating> findAllMpa() {
-        final String sqlQuery = "select * from MPA";
-        final List<MPARating> mpa = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeMpa);
-        if (mpa.size() == 0) {
-            return Collections.emptyList();
-        }
-        return mpa;
+        return dictionary.getAllMpa();
     }
 
     @Override
     public Genre findGenreById(long id) throws ObjectNotFoundException {
-        final String sqlQuery = "select * from GENRES where GENRE_ID = ?";
-        final List<Genre> genre = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeGenre, id);
-        if (genre.size() == 0) {
+        final Genre genre = dictionary.getGenre(id);
+        if (genre == null) {
             log.debug(String.format("Неизвестный жанр %d.", id));
             throw new ObjectNotFoundException("Неизвестный жанр");
         }
-        return genre.get(0);
+        return genre;
     }
 
     @Override
     public List<Genre> findAllGenre() {
-        final String sqlQuery = "select * from GENRES";
-        final List<Genre> genres = jdbcTemplate.query(sqlQuery, FilmDbStorage::makeGenre);
-        if (genres.size() == 0) {
-            return Collections.emptyList();
+        return dictionary.getAllGenres();
+    }
+
+
+    private void insertGenres(long filmId, Set<Integer> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
+        final List<Object[]> rows = new ArrayList<>(genreIds.size());
+        for (Integer genreId : genreIds) {
+            rows.add(new Object[]{filmId, genreId});
+        }
+        jdbcTemplate.batchUpdate("insert into FILM_GENRES(FILM_ID, GENRE_ID) values (?, ?)", rows);
+    }
+
+    private void deleteGenres(long filmId, Set<Integer> genreIds) {
+        if (genreIds.isEmpty()) {
+            return;
+        }
+        final List<Object[]> rows = new ArrayList<>(genreIds.size());
+        for (Integer genreId : genreIds) {
+            rows.add(new Object[]{filmId, genreId});
+        }
+        jdbcTemplate.batchUpdate("delete from FILM_GENRES where FILM_ID = ? and GENRE_ID = ?", rows);
+    }
+
+    //id жанров фильма без повторов, по возрастанию
+    private static Set<Integer> getGenreIds(Film film) {
+        final Set<Integer> genreIds = new TreeSet<>();
+        if (film.getGenres() != null) {
+            for (Genre genre : film.getGenres()) {
+                genreIds.add(genre.getId());
+            }
+        }
+        return genreIds;
+    }
+
+    private List<Genre> toGenres(Set<Integer> genreIds) {
+        final List<Genre> genres = new ArrayList<>(genreIds.size());
+        for (Integer genreId : genreIds) {
+            genres.add(dictionary.getGenre(genreId));
         }
         return genres;
     }
 
+    private List<Film> queryFilms(String sqlQuery, Object... args) {
+        final List<Film> films = new ArrayList<>();
+        jdbcTemplate.query(sqlQuery, (ResultSetExtractor<Void>) rs -> {
+            foldFilms(rs, films::add);
+            return null;
+        }, args);
+        return films;
+    }
 
-    private Film setGenre(Film film) {
-        final String sqlQueryGenre = "select G.GENRE_ID, G.GENRE_NAME from FILM_GENRES FG " +
-                "left join GENRES G on G.GENRE_ID = FG.GENRE_ID " +
-                "where FG.FILM_ID = ?";
-        List<Genre> genres = jdbcTemplate.query(sqlQueryGenre, FilmDbStorage::makeGenre , film.getId());
-        film.setGenres(genres);
-        return film;
+    //Сворачивает строки FILMS_WITH_GENRES в фильмы за один проход: строки одного фильма должны идти подряд,
+    //фильм отдаётся, как только начинается следующий
+    private void foldFilms(ResultSet rs, Consumer<Film> consumer) throws SQLException {
+        Film current = null;
+        while (rs.next()) {
+            final long filmId = rs.getLong("FILM_ID");
+            if (current == null || current.getId() != filmId) {
+                if (current != null) {
+                    consumer.accept(current);
+                }
+                current = makeFilm(rs, filmId);
+            }
+            final int genreId = rs.getInt("GENRE_ID");
+            if (!rs.wasNull()) {
+                current.getGenres().add(dictionary.getGenre(genreId));
+            }
+        }
+        if (current != null) {
+            consumer.accept(current);
+        }
+    }
+
+    //Потоковое чтение большого результата. H2 по умолчанию собирает весь результат запроса до выдачи
+    //первой строки, поэтому на время запроса соединение переводится в LAZY_QUERY_EXECUTION.
+    //Строки читаются по мере обхода, только если H2 не нужно сортировать результат: order by должен идти по индексу
+    static <T> T stream(JdbcTemplate jdbcTemplate, String sqlQuery, ResultSetExtractor<T> extractor) {
+        return jdbcTemplate.execute((ConnectionCallback<T>) connection -> {
+            setLazyQueryExecution(connection, true);
+            try (PreparedStatement stmt = connection.prepareStatement(sqlQuery,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return extractor.extractData(rs);
+                }
+            } finally {
+                //Соединение вернётся в пул, следующие запросы на нём должны выполняться как обычно
+                setLazyQueryExecution(connection, false);
+            }
+        });
+    }
+
+    static void stream(JdbcTemplate jdbcTemplate, String sqlQuery, RowCallbackHandler handler) {
+        stream(jdbcTemplate, sqlQuery, (ResultSetExtractor<Void>) rs -> {
+            while (rs.next()) {
+                handler.processRow(rs);
+            }
+            return null;
+        });
+    }
+
+    private static void setLazyQueryExecution(Connection connection, boolean lazy) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("SET LAZY_QUERY_EXECUTION " + lazy);
+        }
     }
 
     //МАППЕРЫ
-    public static Film makeFilm(ResultSet rs, int rowNum) throws SQLException {
-        return Film.builder()
-                .id(rs.getInt("FILM_ID"))
-                .name(rs.getString("FILM_NAME"))
-                .description(rs.getString("DESCRIPTION"))
-                .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
-                .duration(rs.getInt("DURATION"))
-                .mpa(new MPARating(rs.getInt("MPA_ID"), rs.getString("MPA_NAME")))
-                .build();
+    //Рейтинг - общий экземпляр из справочника, дата читается сразу в LocalDate без java.sql.Date
+    private Film makeFilm(ResultSet rs, long filmId) throws SQLException {
+        return new Film(filmId, rs.getString("FILM_NAME"), rs.getString("DESCRIPTION"),
+                rs.getObject("RELEASE_DATE", LocalDate.class), rs.getInt("DURATION"),
+                dictionary.getMpa(rs.getInt("MPA_ID")), new ArrayList<>());
     }
 
     public static Genre makeGenre(ResultSet rs, int rowNum) throws SQLException {
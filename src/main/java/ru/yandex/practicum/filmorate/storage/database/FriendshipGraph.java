@@ -0,0 +1,238 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+//Подтверждённые записи FRIENDS в памяти: для каждого пользователя отсортированный массив id друзей,
+//индексируемый по id пользователя, и такой же обратный массив - кто считает его другом (около 8 байт
+//на ребро). Обратные списки нужны удалению пользователя, чтобы не обходить списки всех остальных.
+//Массивы не меняются после публикации: запись под блокировкой подменяет массив копией, чтение идёт без блокировок.
+@Component
+@Slf4j
+public class FriendshipGraph {
+    private static final int[] EMPTY = new int[0];
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile AtomicReferenceArray<int[]> adjacency = new AtomicReferenceArray<>(0);
+    //Меняется только под блокировкой, читается тоже под ней
+    private AtomicReferenceArray<int[]> inbound = new AtomicReferenceArray<>(0);
+    //Не synchronized: warmUp читает БД под блокировкой, а монитор закрепил бы виртуальный поток за несущим
+    private final ReentrantLock lock = new ReentrantLock();
+
+    @Autowired
+    public FriendshipGraph(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        warmUp();
+    }
+
+    //Перечитывает граф из FRIENDS, например после массового импорта
+    public void warmUp() {
+        lock.lock();
+        try {
+            final Integer maxId = jdbcTemplate.queryForObject("select MAX(USER_ID) from USERS", Integer.class);
+            final AtomicReferenceArray<int[]> loaded = new AtomicReferenceArray<>(maxId == null ? 0 : maxId + 1);
+            final AtomicReferenceArray<int[]> reverse = new AtomicReferenceArray<>(loaded.length());
+            final int[] degrees = new int[loaded.length()];
+            final int[] inDegrees = new int[loaded.length()];
+            final String sqlQuery = "select USER_ID, FRIEND_ID from FRIENDS where STATUS = TRUE order by USER_ID, FRIEND_ID";
+            final long[] edges = {0};
+            //Строки идут по возрастанию USER_ID, поэтому обратные списки тоже получаются отсортированными
+            FilmDbStorage.stream(jdbcTemplate, sqlQuery, rs -> {
+                final int userId = rs.getInt("USER_ID");
+                final int friendId = rs.getInt("FRIEND_ID");
+                append(loaded, degrees, userId, friendId);
+                append(reverse, inDegrees, friendId, userId);
+                edges[0]++;
+            });
+            trim(loaded, degrees);
+            trim(reverse, inDegrees);
+            adjacency = loaded;
+            inbound = reverse;
+            log.debug(String.format("Загружен граф дружбы: %d пользователей, %d связей.", loaded.length(), edges[0]));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Отсортированные id подтверждённых друзей пользователя. Массив нельзя изменять.
+    public int[] getFriends(long userId) {
+        final AtomicReferenceArray<int[]> current = adjacency;
+        if (userId < 0 || userId >= current.length()) {
+            return EMPTY;
+        }
+        final int[] friends = current.get((int) userId);
+        return friends == null ? EMPTY : friends;
+    }
+
+    //Не больше limit id друзей, больших afterId
+    public int[] getFriendsPage(long userId, long afterId, int limit) {
+        final int[] friends = getFriends(userId);
+        int from = Arrays.binarySearch(friends, (int) Math.min(afterId, Integer.MAX_VALUE));
+        from = from >= 0 ? from + 1 : -from - 1;
+        return Arrays.copyOfRange(friends, from, Math.min(friends.length, from + Math.max(limit, 0)));
+    }
+
+    //Общие друзья слиянием двух отсортированных массивов
+    public int[] getCommonFriends(long userId, long otherId) {
+        final int[] first = getFriends(userId);
+        final int[] second = getFriends(otherId);
+        final int[] common = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                common[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(common, size);
+    }
+
+    public void addFriend(long userId, long friendId) {
+        lock.lock();
+        try {
+            ensureCapacity(Math.max(userId, friendId));
+            if (insert(adjacency, (int) userId, (int) friendId)) {
+                insert(inbound, (int) friendId, (int) userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void deleteFriend(long userId, long friendId) {
+        lock.lock();
+        try {
+            if (delete(adjacency, userId, (int) friendId)) {
+                delete(inbound, friendId, (int) userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Как ON DELETE CASCADE: удаляются друзья пользователя и он сам из списков других.
+    //Меняются только списки, где он есть: его друзей в обратных списках и тех, кто считает его другом
+    public void deleteUser(long userId) {
+        lock.lock();
+        try {
+            if (userId >= adjacency.length()) {
+                return;
+            }
+            final int id = (int) userId;
+            final int[] friends = adjacency.getAndSet(id, null);
+            if (friends != null) {
+                for (int friendId : friends) {
+                    delete(inbound, friendId, id);
+                }
+            }
+            final int[] followers = inbound.getAndSet(id, null);
+            if (followers != null) {
+                for (int followerId : followers) {
+                    delete(adjacency, followerId, id);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            adjacency = new AtomicReferenceArray<>(0);
+            inbound = new AtomicReferenceArray<>(0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureCapacity(long userId) {
+        final AtomicReferenceArray<int[]> current = adjacency;
+        if (userId < current.length()) {
+            return;
+        }
+        final int length = (int) Math.max(userId + 1, current.length() + (current.length() >> 1));
+        inbound = grow(inbound, length);
+        adjacency = grow(current, length);
+    }
+
+    private static AtomicReferenceArray<int[]> grow(AtomicReferenceArray<int[]> current, int length) {
+        final AtomicReferenceArray<int[]> grown = new AtomicReferenceArray<>(length);
+        for (int i = 0; i < current.length(); i++) {
+            grown.set(i, current.get(i));
+        }
+        return grown;
+    }
+
+    private static void append(AtomicReferenceArray<int[]> lists, int[] sizes, int owner, int id) {
+        int[] list = lists.get(owner);
+        if (list == null) {
+            list = new int[4];
+        } else if (sizes[owner] == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+        }
+        list[sizes[owner]++] = id;
+        lists.set(owner, list);
+    }
+
+    private static void trim(AtomicReferenceArray<int[]> lists, int[] sizes) {
+        for (int i = 0; i < lists.length(); i++) {
+            final int[] list = lists.get(i);
+            if (list != null && list.length != sizes[i]) {
+                lists.set(i, Arrays.copyOf(list, sizes[i]));
+            }
+        }
+    }
+
+    //Вставляет id в отсортированный список owner; false, если он там уже есть
+    private static boolean insert(AtomicReferenceArray<int[]> lists, int owner, int id) {
+        final int[] list = lists.get(owner);
+        final int[] current = list == null ? EMPTY : list;
+        final int index = Arrays.binarySearch(current, id);
+        if (index >= 0) {
+            return false;
+        }
+        final int position = -index - 1;
+        final int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        updated[position] = id;
+        System.arraycopy(current, position, updated, position + 1, current.length - position);
+        lists.set(owner, updated);
+        return true;
+    }
+
+    //Убирает id из списка owner; false, если его там не было
+    private static boolean delete(AtomicReferenceArray<int[]> lists, long owner, int id) {
+        if (owner < 0 || owner >= lists.length()) {
+            return false;
+        }
+        final int[] list = lists.get((int) owner);
+        final int index = list == null ? -1 : Arrays.binarySearch(list, id);
+        if (index < 0) {
+            return false;
+        }
+        lists.set((int) owner, remove(list, index));
+        return true;
+    }
+
+    private static int[] remove(int[] friends, int index) {
+        if (friends.length == 1) {
+            return null;
+        }
+        final int[] updated = new int[friends.length - 1];
+        System.arraycopy(friends, 0, updated, 0, index);
+        System.arraycopy(friends, index + 1, updated, index, friends.length - index - 1);
+        return updated;
+    }
+}
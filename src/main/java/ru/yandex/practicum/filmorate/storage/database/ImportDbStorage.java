@@ -0,0 +1,208 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+//Пакетная запись при массовом импорте. Пользователи и фильмы сохраняются с id из файла,
+//чтобы на них можно было ссылаться из лайков и дружбы в том же файле.
+@Component
+@Slf4j
+public class ImportDbStorage {
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmDbStorage filmDbStorage;
+    private final FriendshipGraph friendshipGraph;
+
+    @Autowired
+    public ImportDbStorage(JdbcTemplate jdbcTemplate, FilmDbStorage filmDbStorage, FriendshipGraph friendshipGraph) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.filmDbStorage = filmDbStorage;
+        this.friendshipGraph = friendshipGraph;
+    }
+
+    //Записывает пачку строк одной транзакцией: сначала пользователи и фильмы, затем связи между ними
+    @Transactional
+    public void write(List<User> users, List<Film> films, List<Like> likes, List<Friendship> friendships) {
+        insertUsers(users);
+        insertFilms(films);
+        insertLikes(likes);
+        insertFriendships(friendships);
+    }
+
+    //Сдвигает счётчики id за импортированные значения, пересчитывает LIKES_COUNT и перечитывает граф дружбы.
+    //Без общей транзакции: alter table в H2 всё равно фиксирует открытую транзакцию, а каждый шаг
+    //можно безопасно повторить
+    public void finish() {
+        restartIdentity("USERS", "USER_ID");
+        restartIdentity("FILMS", "FILM_ID");
+        filmDbStorage.reconcileLikesCount();
+        friendshipGraph.warmUp();
+    }
+
+    private void insertUsers(List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("insert into USERS(USER_ID, EMAIL, LOGIN, USER_NAME, BIRTHDAY) values (?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        final User user = users.get(i);
+                        stmt.setLong(1, user.getId());
+                        stmt.setString(2, user.getEmail());
+                        stmt.setString(3, user.getLogin());
+                        stmt.setString(4, user.getName());
+                        if (user.getBirthday() == null) {
+                            stmt.setNull(5, Types.DATE);
+                        } else {
+                            stmt.setDate(5, Date.valueOf(user.getBirthday()));
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return users.size();
+                    }
+                });
+    }
+
+    private void insertFilms(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("insert into FILMS(FILM_ID, FILM_NAME, DESCRIPTION, DURATION, MPA_ID, RELEASE_DATE) "
+                        + "values (?, ?, ?, ?, ?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        final Film film = films.get(i);
+                        stmt.setLong(1, film.getId());
+                        stmt.setString(2, film.getName());
+                        if (film.getDescription() == null || film.getDescription().isBlank()) {
+                            stmt.setNull(3, Types.VARCHAR);
+                        } else {
+                            stmt.setString(3, film.getDescription());
+                        }
+                        stmt.setInt(4, film.getDuration());
+                        stmt.setInt(5, film.getMpa().getId());
+                        stmt.setDate(6, Date.valueOf(film.getReleaseDate()));
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return films.size();
+                    }
+                });
+
+        final List<long[]> genres = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() == null) {
+                continue;
+            }
+            final Set<Integer> genreIds = new TreeSet<>();
+            for (Genre genre : film.getGenres()) {
+                genreIds.add(genre.getId());
+            }
+            for (Integer genreId : genreIds) {
+                genres.add(new long[]{film.getId(), genreId});
+            }
+        }
+        if (genres.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("insert into FILM_GENRES(FILM_ID, GENRE_ID) values (?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        stmt.setLong(1, genres.get(i)[0]);
+                        stmt.setLong(2, genres.get(i)[1]);
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return genres.size();
+                    }
+                });
+    }
+
+    private void insertLikes(List<Like> likes) {
+        if (likes.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("merge into LIKES(USER_ID, FILM_ID) key(USER_ID, FILM_ID) values (?, ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        stmt.setLong(1, likes.get(i).getUserId());
+                        stmt.setLong(2, likes.get(i).getFilmId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return likes.size();
+                    }
+                });
+    }
+
+    //Как и UserDbStorage.addFriend: подтверждённая запись пользователя и неподтверждённая встречная
+    private void insertFriendships(List<Friendship> friendships) {
+        if (friendships.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("merge into FRIENDS(USER_ID, FRIEND_ID, STATUS) key(USER_ID, FRIEND_ID) "
+                        + "values (?, ?, true)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        stmt.setLong(1, friendships.get(i).getUserId());
+                        stmt.setLong(2, friendships.get(i).getFriendId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return friendships.size();
+                    }
+                });
+        jdbcTemplate.batchUpdate("insert into FRIENDS(USER_ID, FRIEND_ID, STATUS) select ?, ?, false "
+                        + "where not exists (select 1 from FRIENDS where USER_ID = ? and FRIEND_ID = ?)",
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement stmt, int i) throws SQLException {
+                        final Friendship friendship = friendships.get(i);
+                        stmt.setLong(1, friendship.getFriendId());
+                        stmt.setLong(2, friendship.getUserId());
+                        stmt.setLong(3, friendship.getFriendId());
+                        stmt.setLong(4, friendship.getUserId());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return friendships.size();
+                    }
+                });
+    }
+
+    private void restartIdentity(String table, String column) {
+        final Long maxId = jdbcTemplate.queryForObject("select max(" + column + ") from " + table, Long.class);
+        if (maxId != null) {
+            jdbcTemplate.execute("alter table " + table + " alter column " + column + " restart with " + (maxId + 1));
+        }
+    }
+}
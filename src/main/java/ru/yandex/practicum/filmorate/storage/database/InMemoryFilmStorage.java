@@ -2,12 +2,14 @@ package ru.yandex.practicum.filmorate.storage.database;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.controllers.FilmController;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidationException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.MPARating;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
@@ -16,42 +18,128 @@ import java.time.Month;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+//Потокобезопасное хранилище фильмов в памяти: изменения фильма, его лайков и рейтинга
+//выполняются под одной из LOCK_STRIPES блокировок, выбранной по id фильма.
+//Хранятся копии фильмов и наружу отдаются копии: изменение объекта вызывающим не меняет хранилище
 @Component
 public class InMemoryFilmStorage implements FilmStorage {
 
-    private long lastFilmId = 0;
-    private static HashMap<Long, Film> films = new HashMap<>();
+    private static final int LOCK_STRIPES = 64;
+
+    private final ReferenceDataDictionary dictionary;
+    private final AtomicLong lastFilmId = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, Set<Long>> likes = new ConcurrentHashMap<>();
+    //Фильмы по убыванию числа лайков, при равенстве по id — как в FilmDbStorage.getPopularFilms
+    private final ConcurrentSkipListSet<Rank> popular = new ConcurrentSkipListSet<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
     private final static LocalDate DATE_BORN_MOVIE = LocalDate.of(1895, Month.DECEMBER, 28);
     private final static Logger log = LoggerFactory.getLogger(FilmController.class);
 
+    //Справочники из тех же schema.sql и data.sql, что и у БД приложения
+    public InMemoryFilmStorage() {
+        this(ReferenceDataDictionary.fromScripts());
+    }
+
+    @Autowired
+    public InMemoryFilmStorage(ReferenceDataDictionary dictionary) {
+        this.dictionary = dictionary;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
     @Override
     public List<Film> findAll() {
-        return new ArrayList<>(films.values());
+        final List<Film> result = new ArrayList<>(films.size());
+        for (Film film : films.values()) {
+            result.add(copy(film));
+        }
+        return result;
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        films.values().forEach(film -> consumer.accept(copy(film)));
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(InMemoryFilmStorage::copy)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Film findById(long id) throws ObjectNotFoundException {
-        if (!films.containsKey(id)) {
+        final Film film = films.get(id);
+        if (film == null) {
             throw new ObjectNotFoundException("Фильм не найден!");
         }
-        return films.get(id);
+        return copy(film);
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> ids) {
+        List<Film> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Film film = films.get(id);
+            if (film != null) {
+                result.add(copy(film));
+            }
+        }
+        return result;
     }
 
     @Override
     public Film create(Film film) {
+        normalize(film);
         film.setId(getNextId());
-        films.put(film.getId(), film);
+        synchronized (lockFor(film.getId())) {
+            likes.put(film.getId(), ConcurrentHashMap.newKeySet());
+            popular.add(new Rank(film.getId(), 0));
+            films.put(film.getId(), stored(film));
+        }
         log.debug("Сохранён фильм: {}", film.toString());
         return film;
     }
 
+    //Вставляет или заменяет копию фильма с уже назначенным id (для реплики БД), лайки фильма сохраняются
+    public Film save(Film film) {
+        final Film copy = stored(film);
+        normalize(copy);
+        synchronized (lockFor(copy.getId())) {
+            if (likes.putIfAbsent(copy.getId(), ConcurrentHashMap.newKeySet()) == null) {
+                popular.add(new Rank(copy.getId(), 0));
+            }
+            films.put(copy.getId(), copy);
+        }
+        lastFilmId.accumulateAndGet(copy.getId(), Math::max);
+        return copy(copy);
+    }
+
+    //Под той же блокировкой, что и удаление: обновление не вернёт удалённый фильм
     @Override
     public Film put(Film film) throws ObjectNotFoundException {
-        if (!films.containsKey(film.getId())) {
-            throw new ObjectNotFoundException("Фильм не найден.");
+        normalize(film);
+        synchronized (lockFor(film.getId())) {
+            if (!films.containsKey(film.getId())) {
+                throw new ObjectNotFoundException("Фильм не найден.");
+            }
+            films.put(film.getId(), stored(film));
         }
-        films.put(film.getId(), film);
         log.debug("Обновлён фильм: {}", film.toString());
         return film;
     }
@@ -59,47 +147,183 @@ public class InMemoryFilmStorage implements FilmStorage {
     @Override
     public void deleteAll() {
         films.clear();
+        likes.clear();
+        popular.clear();
     }
 
     @Override
-    public void delete(long id) {
+    public void delete(long id) throws ObjectNotFoundException {
+        synchronized (lockFor(id)) {
+            if (films.remove(id) == null) {
+                throw new ObjectNotFoundException("Фильм не найден.");
+            }
+            final Set<Long> filmLikes = likes.remove(id);
+            popular.remove(new Rank(id, filmLikes.size()));
+        }
         log.debug("Удалён фильм: {}", id);
-        films.remove(id);
     }
 
     @Override
     public boolean addLike(long filmId, long userId) {
-        return false;
+        synchronized (lockFor(filmId)) {
+            final Set<Long> filmLikes = likes.get(filmId);
+            if (filmLikes == null || !filmLikes.add(userId)) {
+                return false;
+            }
+            popular.remove(new Rank(filmId, filmLikes.size() - 1));
+            popular.add(new Rank(filmId, filmLikes.size()));
+        }
+        return true;
     }
 
     @Override
     public boolean deleteLike(long filmId, long userId) {
-        return false;
+        synchronized (lockFor(filmId)) {
+            final Set<Long> filmLikes = likes.get(filmId);
+            if (filmLikes == null || !filmLikes.remove(userId)) {
+                return false;
+            }
+            popular.remove(new Rank(filmId, filmLikes.size() + 1));
+            popular.add(new Rank(filmId, filmLikes.size()));
+        }
+        return true;
+    }
+
+    //Как ON DELETE CASCADE в LIKES при удалении пользователя
+    public void deleteUserLikes(long userId) {
+        for (Long filmId : likes.keySet()) {
+            deleteLike(filmId, userId);
+        }
+    }
+
+    public void deleteAllLikes() {
+        for (Long filmId : likes.keySet()) {
+            synchronized (lockFor(filmId)) {
+                final Set<Long> filmLikes = likes.get(filmId);
+                if (filmLikes != null && !filmLikes.isEmpty()) {
+                    popular.remove(new Rank(filmId, filmLikes.size()));
+                    popular.add(new Rank(filmId, 0));
+                    filmLikes.clear();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void applyLikes(List<Like> added, List<Like> deleted) {
+        for (Like like : added) {
+            addLike(like.getFilmId(), like.getUserId());
+        }
+        for (Like like : deleted) {
+            deleteLike(like.getFilmId(), like.getUserId());
+        }
     }
 
     @Override
     public List<Film> getPopularFilms(int count) {
-        return null;
+        final List<Film> result = new ArrayList<>(Math.min(count, films.size()));
+        for (Rank rank : popular) {
+            if (result.size() == count) {
+                break;
+            }
+            final Film film = films.get(rank.filmId);
+            if (film != null) {
+                result.add(copy(film));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        final List<Film> result = new ArrayList<>();
+        for (Rank rank : popular) {
+            if (result.size() == count) {
+                break;
+            }
+            final Film film = films.get(rank.filmId);
+            if (film == null) {
+                continue;
+            }
+            if (year != null && (film.getReleaseDate() == null || film.getReleaseDate().getYear() != year)) {
+                continue;
+            }
+            if (genreId != null && (film.getGenres() == null
+                    || film.getGenres().stream().noneMatch(genre -> genre.getId() == genreId))) {
+                continue;
+            }
+            result.add(copy(film));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Long, Long> findLikesCount() {
+        Map<Long, Long> result = new HashMap<>();
+        for (Map.Entry<Long, Set<Long>> entry : likes.entrySet()) {
+            result.put(entry.getKey(), (long) entry.getValue().size());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<Long, Long> findLikesCount(List<Long> filmIds) {
+        Map<Long, Long> result = new HashMap<>();
+        for (Long filmId : filmIds) {
+            final Set<Long> filmLikes = likes.get(filmId);
+            if (filmLikes != null) {
+                result.put(filmId, (long) filmLikes.size());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<Long> findLikedFilmIds(long userId) {
+        List<Long> result = new ArrayList<>();
+        likes.forEach((filmId, users) -> {
+            if (users.contains(userId)) {
+                result.add(filmId);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        likes.forEach((filmId, users) -> {
+            for (Long userId : users) {
+                consumer.accept(new Like(filmId, userId));
+            }
+        });
     }
 
     @Override
     public MPARating findMpaById(long id) throws ObjectNotFoundException {
-        return null;
+        final MPARating mpa = dictionary.getMpa(id);
+        if (mpa == null) {
+            throw new ObjectNotFoundException("Неизвестный рейтинг");
+        }
+        return mpa;
     }
 
     @Override
     public List<MPARating> findAllMpa() {
-        return null;
+        return dictionary.getAllMpa();
     }
 
     @Override
     public Genre findGenreById(long id) throws ObjectNotFoundException {
-        return null;
+        final Genre genre = dictionary.getGenre(id);
+        if (genre == null) {
+            throw new ObjectNotFoundException("Неизвестный жанр");
+        }
+        return genre;
     }
 
     @Override
     public List<Genre> findAllGenre() {
-        return null;
+        return dictionary.getAllGenres();
     }
 
 
@@ -120,7 +344,83 @@ public class InMemoryFilmStorage implements FilmStorage {
         return message;
     }
 
+    //Рейтинг и жанры заменяются значениями из справочника, жанры без повторов и по возрастанию id
+    //Хранимая копия. Без жанров фильм хранится с пустым списком, как его читает FilmDbStorage
+    private static Film stored(Film film) {
+        return film.toBuilder()
+                .genres(film.getGenres() == null ? List.of() : new ArrayList<>(film.getGenres()))
+                .build();
+    }
+
+    private static Film copy(Film film) {
+        return film.toBuilder()
+                .genres(film.getGenres() == null ? null : new ArrayList<>(film.getGenres()))
+                .build();
+    }
+
+    private void normalize(Film film) {
+        if (film.getMpa() != null) {
+            try {
+                film.setMpa(findMpaById(film.getMpa().getId()));
+            } catch (ObjectNotFoundException e) {
+                throw new ValidationException(e.getMessage());
+            }
+        }
+        if (film.getGenres() != null) {
+            final Set<Integer> genreIds = new TreeSet<>();
+            for (Genre genre : film.getGenres()) {
+                genreIds.add(genre.getId());
+            }
+            final List<Genre> genres = new ArrayList<>(genreIds.size());
+            for (Integer genreId : genreIds) {
+                try {
+                    genres.add(findGenreById(genreId));
+                } catch (ObjectNotFoundException e) {
+                    throw new ValidationException(e.getMessage());
+                }
+            }
+            film.setGenres(genres);
+        }
+    }
+
+    private Object lockFor(long filmId) {
+        return locks[(int) (filmId & (LOCK_STRIPES - 1))];
+    }
+
     private long getNextId() {
-        return ++lastFilmId;
+        return lastFilmId.incrementAndGet();
+    }
+
+    private static final class Rank implements Comparable<Rank> {
+        private final long filmId;
+        private final long likes;
+
+        private Rank(long filmId, long likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+
+        @Override
+        public int compareTo(Rank other) {
+            final int byLikes = Long.compare(other.likes, likes);
+            return byLikes != 0 ? byLikes : Long.compare(filmId, other.filmId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Rank)) {
+                return false;
+            }
+            final Rank rank = (Rank) o;
+            return filmId == rank.filmId && likes == rank.likes;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(filmId) * 31 + Long.hashCode(likes);
+        }
     }
 }
@@ -2,52 +2,108 @@ package ru.yandex.practicum.filmorate.storage.database;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.RequestBody;
 import ru.yandex.practicum.filmorate.controllers.UserController;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
-import javax.validation.Valid;
+import jakarta.validation.Valid;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+//Потокобезопасное хранилище пользователей в памяти. Дружба хранится так же, как в таблице FRIENDS:
+//по записи (друг -> статус) на каждую пару, подтверждённая запись у того, кто добавил друга.
+//Хранятся копии пользователей и наружу отдаются копии, как и в InMemoryFilmStorage
 @Component("inMemoryUserStorage")
 public class InMemoryUserStorage implements UserStorage {
-    private long lastUsedId = 0;
-    private final HashMap<Long, User> users = new HashMap<>();
+    private final AtomicLong lastUsedId = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final ConcurrentMap<Long, ConcurrentSkipListMap<Long, Boolean>> friends = new ConcurrentHashMap<>();
     private final static Logger log = LoggerFactory.getLogger(UserController.class);
+    //Лайки пользователя хранятся у фильмов и удаляются вместе с ним
+    private final InMemoryFilmStorage filmStorage;
+
+    @Autowired
+    public InMemoryUserStorage(InMemoryFilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
 
     @Override
     public List<User> findAll() {
-        return new ArrayList<>(users.values());
+        final List<User> result = new ArrayList<>(users.size());
+        for (User user : users.values()) {
+            result.add(copy(user));
+        }
+        return result;
     }
 
     @Override
-    public User findById(long id) throws ObjectNotFoundException {
+    public void streamAll(Consumer<User> consumer) {
+        users.values().forEach(user -> consumer.accept(copy(user)));
+    }
 
-        if (!users.containsKey(id)) {
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(InMemoryUserStorage::copy)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public User findById(long id) throws ObjectNotFoundException {
+        final User user = users.get(id);
+        if (user == null) {
             throw new ObjectNotFoundException("Пользователь не найден.");
         }
-        return users.get(id);
+        return copy(user);
+    }
+
+    @Override
+    public List<User> findByIds(List<Long> ids) {
+        final List<User> result = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            final User user = users.get(id);
+            if (user != null) {
+                result.add(copy(user));
+            }
+        }
+        return result;
     }
 
     @Override
     public User create(@Valid @RequestBody User user)  {
         user.setId(getNextId());
-        users.put(user.getId(), user);
+        users.put(user.getId(), copy(user));
         log.debug("Сохранён пользователь: {}", user.toString());
         return user;
     }
 
+    //Вставляет или заменяет копию пользователя с уже назначенным id (для реплики БД)
+    public User save(User user) {
+        users.put(user.getId(), copy(user));
+        lastUsedId.accumulateAndGet(user.getId(), Math::max);
+        return copy(user);
+    }
+
     @Override
     public User put(User user) throws ObjectNotFoundException {
-        if (!users.containsKey(user.getId())) {
+        final User stored = copy(user);
+        if (users.computeIfPresent(user.getId(), (id, current) -> stored) == null) {
             throw new ObjectNotFoundException("Пользователь не найден.");
         }
-        users.put(user.getId(), user);
         log.debug("Обновлён пользователь: {}", user.toString());
         return user;
     }
@@ -55,39 +111,132 @@ public class InMemoryUserStorage implements UserStorage {
     @Override
     public void deleteAll() {
         users.clear();
+        friends.clear();
+        filmStorage.deleteAllLikes();
     }
 
-    public void delete(long id) {
+    //Как ON DELETE CASCADE в FRIENDS и LIKES: удаляются записи пользователя, записи о нём у других и его лайки
+    public void delete(long id) throws ObjectNotFoundException {
+        if (users.remove(id) == null) {
+            throw new ObjectNotFoundException("Пользователь не найден.");
+        }
+        friends.remove(id);
+        for (Map<Long, Boolean> userFriends : friends.values()) {
+            userFriends.remove(id);
+        }
+        filmStorage.deleteUserLikes(id);
         log.debug("Удалён пользователь: {}", id);
-        users.remove(id);
     }
 
     @Override
     public void addFriend(Long userId, Long friendId) {
-
+        friendsOf(userId).put(friendId, true);
+        friendsOf(friendId).putIfAbsent(userId, false);
     }
 
     @Override
     public boolean deleteFriend(Long userId, Long friendId) {
-        return false;
+        final Map<Long, Boolean> userFriends = friends.get(userId);
+        return userFriends != null && userFriends.remove(friendId) != null;
     }
 
     @Override
     public List<User> getFriends(Long userId) {
-        return null;
+        final ConcurrentSkipListMap<Long, Boolean> userFriends = friends.get(userId);
+        if (userFriends == null) {
+            return new ArrayList<>();
+        }
+        return toUsers(userFriends, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<User> getFriendsPage(Long userId, long afterId, int limit) {
+        final ConcurrentSkipListMap<Long, Boolean> userFriends = friends.get(userId);
+        if (userFriends == null) {
+            return new ArrayList<>();
+        }
+        return toUsers(userFriends.tailMap(afterId, false), limit);
     }
 
     @Override
     public List<User> getCommonFriends(Long userId, Long otherId) {
-        return null;
+        final ConcurrentSkipListMap<Long, Boolean> userFriends = friends.get(userId);
+        final ConcurrentSkipListMap<Long, Boolean> otherFriends = friends.get(otherId);
+        final List<User> result = new ArrayList<>();
+        if (userFriends == null || otherFriends == null) {
+            return result;
+        }
+        for (Map.Entry<Long, Boolean> entry : userFriends.entrySet()) {
+            if (entry.getValue() && Boolean.TRUE.equals(otherFriends.get(entry.getKey()))) {
+                final User user = users.get(entry.getKey());
+                if (user != null) {
+                    result.add(copy(user));
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds) {
+        return MutualFriendsCounter.count(this::confirmedFriendIds, userId, otherIds);
+    }
+
+    @Override
+    public List<MutualFriends> getFriendSuggestions(Long userId, int limit) {
+        return MutualFriendsCounter.suggest(this::confirmedFriendIds, userId, limit);
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> consumer) {
+        friends.forEach((userId, userFriends) -> userFriends.forEach((friendId, confirmed) -> {
+            if (confirmed) {
+                consumer.accept(new Friendship(userId, friendId));
+            }
+        }));
     }
 
 
     //ДОПОЛНИТЕЛЬНЫЕ МЕТОДЫ
+    private ConcurrentSkipListMap<Long, Boolean> friendsOf(Long userId) {
+        return friends.computeIfAbsent(userId, id -> new ConcurrentSkipListMap<>());
+    }
 
+    //Отсортированные id подтверждённых друзей, как FriendshipGraph.getFriends
+    private int[] confirmedFriendIds(long userId) {
+        final Map<Long, Boolean> userFriends = friends.get(userId);
+        if (userFriends == null) {
+            return new int[0];
+        }
+        return userFriends.entrySet().stream()
+                .filter(Map.Entry::getValue)
+                .mapToInt(entry -> entry.getKey().intValue())
+                .toArray();
+    }
+
+    //Подтверждённые друзья по возрастанию id
+    private List<User> toUsers(Map<Long, Boolean> userFriends, int limit) {
+        final List<User> result = new ArrayList<>();
+        for (Map.Entry<Long, Boolean> entry : userFriends.entrySet()) {
+            if (result.size() == limit) {
+                break;
+            }
+            if (entry.getValue()) {
+                final User user = users.get(entry.getKey());
+                if (user != null) {
+                    result.add(copy(user));
+                }
+            }
+        }
+        return result;
+    }
 
     private long getNextId() {
-        return ++lastUsedId;
+        return lastUsedId.incrementAndGet();
     }
 
+
+    private static User copy(User user) {
+        return user.toBuilder().build();
+    }
 }
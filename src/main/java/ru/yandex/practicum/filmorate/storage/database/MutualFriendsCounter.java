@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import ru.yandex.practicum.filmorate.model.MutualFriends;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+//Подсчёт общих друзей по отсортированным массивам id подтверждённых друзей.
+//Начиная с PARALLEL_THRESHOLD пользователей работа делится между потоками общего ForkJoinPool.
+final class MutualFriendsCounter {
+    static final int PARALLEL_THRESHOLD = 1024;
+
+    private MutualFriendsCounter() {
+    }
+
+    //Число общих друзей userId с каждым из otherIds, в порядке otherIds
+    static List<MutualFriends> count(LongFunction<int[]> friendsOf, long userId, List<Long> otherIds) {
+        final int[] friends = friendsOf.apply(userId);
+        final Stream<Long> others = otherIds.size() >= PARALLEL_THRESHOLD
+                ? otherIds.parallelStream() : otherIds.stream();
+        return others
+                .map(otherId -> new MutualFriends(otherId, intersectionSize(friends, friendsOf.apply(otherId))))
+                .collect(Collectors.toList());
+    }
+
+    //Друзья друзей, которые ещё не в друзьях у userId, по убыванию числа общих друзей, затем по id
+    static List<MutualFriends> suggest(LongFunction<int[]> friendsOf, long userId, int limit) {
+        final int[] friends = friendsOf.apply(userId);
+        final IntStream stream = friends.length >= PARALLEL_THRESHOLD
+                ? Arrays.stream(friends).parallel() : Arrays.stream(friends);
+        final Map<Integer, Integer> counts = stream.collect(HashMap::new, (map, friendId) -> {
+            for (int candidate : friendsOf.apply(friendId)) {
+                if (candidate != userId && Arrays.binarySearch(friends, candidate) < 0) {
+                    map.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }, (left, right) -> right.forEach((id, count) -> left.merge(id, count, Integer::sum)));
+        final List<MutualFriends> suggestions = new ArrayList<>(counts.size());
+        counts.forEach((id, count) -> suggestions.add(new MutualFriends(id, count)));
+        suggestions.sort(Comparator.comparingInt(MutualFriends::getMutualFriends).reversed()
+                .thenComparingLong(MutualFriends::getUserId));
+        return suggestions.size() > limit ? new ArrayList<>(suggestions.subList(0, limit)) : suggestions;
+    }
+
+    private static int intersectionSize(int[] first, int[] second) {
+        int size = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                size++;
+                i++;
+                j++;
+            }
+        }
+        return size;
+    }
+}
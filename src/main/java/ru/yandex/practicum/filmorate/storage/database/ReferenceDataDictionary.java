@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+
+import java.util.List;
+
+//Справочники MPA и жанров. Таблицы заполняются data.sql и не меняются,
+//поэтому загружаются один раз при старте в массивы, индексируемые по id.
+@Component
+@Slf4j
+public class ReferenceDataDictionary {
+    private final List<MPARating> mpaList;
+    private final MPARating[] mpaById;
+    private final List<Genre> genreList;
+    private final Genre[] genresById;
+
+    @Autowired
+    public ReferenceDataDictionary(JdbcTemplate jdbcTemplate) {
+        mpaList = List.copyOf(jdbcTemplate.query("select * from MPA order by MPA_ID", FilmDbStorage::makeMpa));
+        genreList = List.copyOf(jdbcTemplate.query("select * from GENRES order by GENRE_ID", FilmDbStorage::makeGenre));
+        mpaById = new MPARating[mpaList.isEmpty() ? 0 : mpaList.get(mpaList.size() - 1).getId() + 1];
+        for (MPARating mpa : mpaList) {
+            mpaById[mpa.getId()] = mpa;
+        }
+        genresById = new Genre[genreList.isEmpty() ? 0 : genreList.get(genreList.size() - 1).getId() + 1];
+        for (Genre genre : genreList) {
+            genresById[genre.getId()] = genre;
+        }
+        log.debug(String.format("Загружены справочники: %d рейтингов, %d жанров.", mpaList.size(), genreList.size()));
+    }
+
+    //Те же справочники без БД приложения: schema.sql и data.sql выполняются во временной БД в памяти.
+    //Нужны хранилищам в памяти, которые создаются вне Spring. Загружаются один раз
+    public static ReferenceDataDictionary fromScripts() {
+        return Scripts.DICTIONARY;
+    }
+
+    public List<MPARating> getAllMpa() {
+        return mpaList;
+    }
+
+    //null, если рейтинга с таким id нет
+    public MPARating getMpa(long id) {
+        return id >= 0 && id < mpaById.length ? mpaById[(int) id] : null;
+    }
+
+    public List<Genre> getAllGenres() {
+        return genreList;
+    }
+
+    //null, если жанра с таким id нет
+    public Genre getGenre(long id) {
+        return id >= 0 && id < genresById.length ? genresById[(int) id] : null;
+    }
+
+    private static final class Scripts {
+        private static final ReferenceDataDictionary DICTIONARY = load();
+
+        private static ReferenceDataDictionary load() {
+            final EmbeddedDatabase database = new EmbeddedDatabaseBuilder()
+                    .generateUniqueName(true)
+                    .setType(EmbeddedDatabaseType.H2)
+                    .setScriptEncoding("UTF-8")
+                    .addScripts("schema.sql", "data.sql")
+                    .build();
+            try {
+                return new ReferenceDataDictionary(new JdbcTemplate(database));
+            } finally {
+                database.shutdown();
+            }
+        }
+    }
+}
@@ -2,29 +2,39 @@ package ru.yandex.practicum.filmorate.storage.database;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 @Component("userDbStorage")
-@Primary
 @Slf4j
 public class UserDbStorage implements UserStorage {
+    private static final int IN_BATCH_SIZE = 1000;
     private final JdbcTemplate jdbcTemplate;
+    private final FriendshipGraph friendshipGraph;
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbcTemplate) {
+    public UserDbStorage(JdbcTemplate jdbcTemplate, FriendshipGraph friendshipGraph) {
         this.jdbcTemplate = jdbcTemplate;
+        this.friendshipGraph = friendshipGraph;
     }
 
     @Override
@@ -37,6 +47,21 @@ public class UserDbStorage implements UserStorage {
         return users;
     }
 
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        final String sqlQuery = "select * from USERS order by USER_ID";
+        FilmDbStorage.stream(jdbcTemplate, sqlQuery, rs -> {
+            consumer.accept(makeUser(rs, 0));
+        });
+    }
+
+    //Страница пользователей с id больше afterId, по возрастанию id
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        final String sqlQuery = "select * from USERS where USER_ID > ? order by USER_ID limit ?";
+        return jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser, afterId, limit);
+    }
+
     @Override
     public User findById(long id) throws ObjectNotFoundException {
         final String sqlQuery = "select * from USERS where USER_ID = ?";
@@ -48,6 +73,16 @@ public class UserDbStorage implements UserStorage {
         return users.get(0);
     }
 
+    //Пользователи в порядке переданных id, несуществующие id пропускаются
+    @Override
+    public List<User> findByIds(List<Long> ids) {
+        final int[] userIds = new int[ids.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = ids.get(i).intValue();
+        }
+        return findByIds(userIds);
+    }
+
     public static User makeUser(ResultSet rs, int rowNum) throws SQLException {
         return new User(rs.getInt("USER_ID"),
                 rs.getString("EMAIL"),
@@ -97,58 +132,126 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
+    @Transactional
     public void deleteAll() {
+        jdbcTemplate.update("update FILMS set LIKES_COUNT = 0");
         String sqlQuery = "delete from USERS";
         jdbcTemplate.update(sqlQuery);
+        afterCommit(friendshipGraph::clear);
     }
 
+    @Transactional
     public void delete(long id) throws ObjectNotFoundException {
+        //Лайки пользователя удалятся каскадно, поэтому счётчики фильмов уменьшаем заранее
+        jdbcTemplate.update("update FILMS set LIKES_COUNT = LIKES_COUNT - 1 "
+                + "where FILM_ID in (select FILM_ID from LIKES where USER_ID = ?)", id);
         String sqlQuery = "delete from USERS where USER_ID = ?";
         if (jdbcTemplate.update(sqlQuery, id) == 0) {
             log.debug(String.format("Пользователь %d не найден.", id));
             throw new ObjectNotFoundException("Пользователь не найден!");
         }
+        afterCommit(() -> friendshipGraph.deleteUser(id));
         log.debug(String.format("Пользователь %d удалён из системы.", id));
     }
 
+    //Пара (USER_ID, FRIEND_ID) уникальна: запись пользователя подтверждается,
+    //встречная неподтверждённая запись добавляется, только если её ещё нет
+    @Transactional
     public void addFriend(Long userId, Long friendId) {
-        String sqlQuery = "insert into FRIENDS(USER_ID, FRIEND_ID, STATUS)" + "values (?, ?, ?)";
+        String sqlQuery = "merge into FRIENDS(USER_ID, FRIEND_ID, STATUS) key(USER_ID, FRIEND_ID) values (?, ?, ?)";
         jdbcTemplate.update(sqlQuery, userId, friendId, true);
 
-        sqlQuery = "insert into FRIENDS(USER_ID, FRIEND_ID, STATUS)" + "values (?, ?, ?)";
-        jdbcTemplate.update(sqlQuery, friendId, userId, false);
+        sqlQuery = "insert into FRIENDS(USER_ID, FRIEND_ID, STATUS) select ?, ?, ? "
+                + "where not exists (select 1 from FRIENDS where USER_ID = ? AND FRIEND_ID = ?)";
+        jdbcTemplate.update(sqlQuery, friendId, userId, false, friendId, userId);
+        afterCommit(() -> friendshipGraph.addFriend(userId, friendId));
     }
 
     @Override
     public boolean deleteFriend(Long userId, Long friendId) {
         String sqlQuery = "delete from FRIENDS where USER_ID = ? AND FRIEND_ID = ?";
-        return (jdbcTemplate.update(sqlQuery, userId, friendId) > 0);
+        if (jdbcTemplate.update(sqlQuery, userId, friendId) == 0) {
+            return false;
+        }
+        afterCommit(() -> friendshipGraph.deleteFriend(userId, friendId));
+        return true;
     }
 
+    //Списки друзей берутся из FriendshipGraph, из БД читаются только сами пользователи
     @Override
     public List<User> getFriends(Long userId) {
-        final String sqlQuery = "select * from USERS where USER_ID in "
-                + "(select FRIEND_ID from FRIENDS where USER_ID = ? AND STATUS = TRUE)";
-        final List<User> users = jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser, userId);
-        if (users.size() == 0) {
-            return Collections.emptyList();
-        }
-        return users;
+        return findByIds(friendshipGraph.getFriends(userId));
+    }
+
+    @Override
+    public List<User> getFriendsPage(Long userId, long afterId, int limit) {
+        return findByIds(friendshipGraph.getFriendsPage(userId, afterId, limit));
     }
 
     @Override
     public List<User> getCommonFriends(Long userId, Long otherId) {
-        final String sqlQuery = "select * from USERS where USER_ID in"
-                + "(select * from (select FRIEND_ID from FRIENDS where USER_ID=? AND STATUS = TRUE)"
-                + "where FRIEND_ID in (select FRIEND_ID from FRIENDS where USER_ID=? AND STATUS = TRUE))";
-        final List<User> friends = jdbcTemplate.query(sqlQuery,
-                UserDbStorage::makeUser,
-                userId,
-                otherId);
-        if (friends.size() == 0) {
+        return findByIds(friendshipGraph.getCommonFriends(userId, otherId));
+    }
+
+    @Override
+    public List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds) {
+        return MutualFriendsCounter.count(friendshipGraph::getFriends, userId, otherIds);
+    }
+
+    @Override
+    public List<MutualFriends> getFriendSuggestions(Long userId, int limit) {
+        return MutualFriendsCounter.suggest(friendshipGraph::getFriends, userId, limit);
+    }
+
+    //Подтверждённые записи FRIENDS одним проходом курсора
+    @Override
+    public void forEachFriendship(Consumer<Friendship> consumer) {
+        final String sqlQuery = "select USER_ID, FRIEND_ID from FRIENDS where STATUS = TRUE";
+        FilmDbStorage.stream(jdbcTemplate, sqlQuery, rs -> {
+            consumer.accept(new Friendship(rs.getLong("USER_ID"), rs.getLong("FRIEND_ID")));
+        });
+    }
+
+    //Пользователи в порядке переданных id, пачками по IN_BATCH_SIZE
+    private List<User> findByIds(int[] ids) {
+        if (ids.length == 0) {
             return Collections.emptyList();
         }
-        return friends;
+        final Map<Long, User> usersById = new HashMap<>();
+        for (int from = 0; from < ids.length; from += IN_BATCH_SIZE) {
+            final int to = Math.min(from + IN_BATCH_SIZE, ids.length);
+            final Object[] batch = new Object[to - from];
+            for (int i = from; i < to; i++) {
+                batch[i - from] = ids[i];
+            }
+            final String sqlQuery = "select * from USERS " +
+                    "where USER_ID in (" + String.join(",", Collections.nCopies(batch.length, "?")) + ")";
+            for (User user : jdbcTemplate.query(sqlQuery, UserDbStorage::makeUser, batch)) {
+                usersById.put(user.getId(), user);
+            }
+        }
+        final List<User> users = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            final User user = usersById.get((long) id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    //Граф меняется только после фиксации транзакции, чтобы откат не оставил в нём чужих изменений
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
 }
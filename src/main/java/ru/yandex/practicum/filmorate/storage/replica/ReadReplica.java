@@ -0,0 +1,281 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.database.ReferenceDataDictionary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+//Копия БД в памяти (InMemoryFilmStorage и InMemoryUserStorage) для чтения. Каждая запись в БД попадает
+//в журнал изменений, который один поток воспроизводит в памяти по порядку. Отставание копии ограничено:
+//пока самое старое невоспроизведённое изменение старше max-lag-ms, чтения идут в БД.
+//Перечитывание из БД собирает новую копию и подменяет ею текущую, до подмены читается прежняя.
+//Включается свойством filmorate.read-replica.enabled (по умолчанию выключено).
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "filmorate.read-replica.enabled", havingValue = "true")
+public class ReadReplica {
+    static final String LAG_GAUGE = "filmorate.replica.lag";
+    static final String PENDING_GAUGE = "filmorate.replica.pending";
+    static final String REPLAY_TIMER = "filmorate.replica.replay";
+    static final String FALLBACK_COUNTER = "filmorate.replica.fallback.reads";
+    private static final int LOCK_STRIPES = 64;
+
+    private final FilmStorage filmDbStorage;
+    private final UserStorage userDbStorage;
+    private final ReferenceDataDictionary dictionary;
+    private volatile Copy copy;
+    private final long maxLagNanos;
+    private final BlockingQueue<Change> changes = new LinkedBlockingQueue<>();
+    //Изменение, которое воспроизводится сейчас: оно уже вынуто из очереди, но отставание считается по нему
+    private volatile Change replaying;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    //Записи по ключам берут её на чтение, массовые записи - на запись и не пересекаются ни с какими другими
+    private final ReentrantReadWriteLock bulkLock = new ReentrantReadWriteLock();
+    //Номер последнего поставленного и последнего воспроизведённого изменения
+    private long published;
+    private volatile long applied;
+    private final ReentrantLock appliedLock = new ReentrantLock();
+    private final Condition appliedChanged = appliedLock.newCondition();
+    private final Timer replayTimer;
+    private final Counter fallbackReads;
+    private final Thread replayer;
+
+    @Autowired
+    public ReadReplica(@Qualifier("filmDbStorage") FilmStorage filmDbStorage,
+                       @Qualifier("userDbStorage") UserStorage userDbStorage,
+                       ReferenceDataDictionary dictionary, MeterRegistry registry,
+                       @Value("${filmorate.read-replica.max-lag-ms:1000}") long maxLagMs) {
+        this.filmDbStorage = filmDbStorage;
+        this.userDbStorage = userDbStorage;
+        this.dictionary = dictionary;
+        this.copy = new Copy(dictionary);
+        this.maxLagNanos = TimeUnit.MILLISECONDS.toNanos(maxLagMs);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        Gauge.builder(LAG_GAUGE, this, replica -> replica.lagNanos() / 1e9).baseUnit("seconds").register(registry);
+        Gauge.builder(PENDING_GAUGE, changes, BlockingQueue::size).register(registry);
+        this.replayTimer = Timer.builder(REPLAY_TIMER).register(registry);
+        this.fallbackReads = Counter.builder(FALLBACK_COUNTER).register(registry);
+        this.replayer = new Thread(this::replay, "read-replica-replay");
+        this.replayer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        load();
+        replayer.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        replayer.interrupt();
+    }
+
+    //Текущая копия: её нужно брать при каждом обращении, после перечитывания она другая
+    public InMemoryFilmStorage films() {
+        return copy.films;
+    }
+
+    public InMemoryUserStorage users() {
+        return copy.users;
+    }
+
+    public static long filmKey(long filmId) {
+        return filmId * 2;
+    }
+
+    public static long userKey(long userId) {
+        return userId * 2 + 1;
+    }
+
+    //Можно ли читать из памяти. Если нет, чтение считается в filmorate.replica.fallback.reads
+    public boolean isFresh() {
+        if (lagNanos() <= maxLagNanos) {
+            return true;
+        }
+        fallbackReads.increment();
+        return false;
+    }
+
+    //Возраст самого старого невоспроизведённого изменения
+    public long lagNanos() {
+        Change oldest = replaying;
+        if (oldest == null) {
+            oldest = changes.peek();
+        }
+        return oldest == null ? 0 : System.nanoTime() - oldest.published;
+    }
+
+    //Пишет в БД и ставит изменение в журнал под блокировками всех затронутых ключей (filmKey, userKey),
+    //поэтому записи с общим ключом попадают в журнал в том же порядке, что и в БД: лайк и удаление его
+    //пользователя не разойдутся. Блокировки берутся по возрастанию номера, так что взаимной блокировки нет.
+    //Затем ждёт воспроизведения (не дольше max-lag-ms), чтобы следующий запрос того же клиента увидел свою запись
+    public <T, E extends Exception> T write(Write<T, E> write, Consumer<T> replay, long... keys) throws E {
+        final List<Lock> held = new ArrayList<>(keys.length + 1);
+        held.add(bulkLock.readLock());
+        final boolean[] striped = new boolean[LOCK_STRIPES];
+        for (long key : keys) {
+            striped[(int) (key & (LOCK_STRIPES - 1))] = true;
+        }
+        for (int stripe = 0; stripe < LOCK_STRIPES; stripe++) {
+            if (striped[stripe]) {
+                held.add(locks[stripe]);
+            }
+        }
+        return write(held, write, replay);
+    }
+
+    //Запись, затрагивающая произвольные ключи (удаление всех записей, пачка лайков): ждёт окончания
+    //остальных записей и не пересекается с ними
+    public <T, E extends Exception> T writeAll(Write<T, E> write, Consumer<T> replay) throws E {
+        return write(List.of(bulkLock.writeLock()), write, replay);
+    }
+
+    //Перечитывает копию из БД после записей в обход хранилищ, например массового импорта
+    public void reload() {
+        awaitApplied(publish(this::load), Long.MAX_VALUE);
+    }
+
+    private <T, E extends Exception> T write(List<Lock> held, Write<T, E> write, Consumer<T> replay) throws E {
+        final T result;
+        final long sequence;
+        for (Lock lock : held) {
+            lock.lock();
+        }
+        try {
+            result = write.run();
+            sequence = publish(() -> replay.accept(result));
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).unlock();
+            }
+        }
+        awaitApplied(sequence, maxLagNanos);
+        return result;
+    }
+
+    private long publish(Runnable apply) {
+        synchronized (changes) {
+            final long sequence = ++published;
+            changes.add(new Change(sequence, System.nanoTime(), apply));
+            return sequence;
+        }
+    }
+
+    private void awaitApplied(long sequence, long timeoutNanos) {
+        if (applied >= sequence) {
+            return;
+        }
+        appliedLock.lock();
+        try {
+            long remaining = timeoutNanos;
+            while (applied < sequence && remaining > 0) {
+                remaining = appliedChanged.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            appliedLock.unlock();
+        }
+        if (applied < sequence) {
+            log.warn(String.format("Изменение %d не воспроизведено за %d мс, чтения идут в БД.", sequence,
+                    TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+        }
+    }
+
+    private void replay() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final Change change;
+            try {
+                change = changes.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            replaying = change;
+            try {
+                change.apply.run();
+            } catch (RuntimeException e) {
+                //Копия могла разойтись с БД: перечитываем её целиком, чтения пока идут в БД
+                log.error("Изменение не воспроизведено в копии, копия перечитывается из БД.", e);
+                load();
+            }
+            replayTimer.record(System.nanoTime() - change.published, TimeUnit.NANOSECONDS);
+            applied = change.sequence;
+            replaying = null;
+            appliedLock.lock();
+            try {
+                appliedChanged.signalAll();
+            } finally {
+                appliedLock.unlock();
+            }
+        }
+    }
+
+    //Выполняется потоком воспроизведения (или до его запуска), поэтому изменения из журнала после
+    //перечитывания применяются уже к новой копии
+    private void load() {
+        final long started = System.nanoTime();
+        final Copy loaded = new Copy(dictionary);
+        filmDbStorage.streamAll(loaded.films::save);
+        filmDbStorage.forEachLike(like -> loaded.films.addLike(like.getFilmId(), like.getUserId()));
+        userDbStorage.streamAll(loaded.users::save);
+        userDbStorage.forEachFriendship(friendship -> loaded.users.addFriend(friendship.getUserId(),
+                friendship.getFriendId()));
+        copy = loaded;
+        log.debug(String.format("Копия БД загружена за %d мс.",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+    }
+
+    @FunctionalInterface
+    public interface Write<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    //Хранилище пользователей удаляет лайки пользователя из хранилища фильмов, поэтому они создаются парой
+    private static final class Copy {
+        private final InMemoryFilmStorage films;
+        private final InMemoryUserStorage users;
+
+        private Copy(ReferenceDataDictionary dictionary) {
+            this.films = new InMemoryFilmStorage(dictionary);
+            this.users = new InMemoryUserStorage(films);
+        }
+    }
+
+    private static final class Change {
+        private final long sequence;
+        private final long published;
+        private final Runnable apply;
+
+        private Change(long sequence, long published, Runnable apply) {
+            this.sequence = sequence;
+            this.published = published;
+            this.apply = apply;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+//Записи идут в БД и через журнал ReadReplica в копию в памяти, чтения - из копии, пока она не отстала.
+//Рейтинги и жанры и так читаются из справочника в памяти FilmDbStorage.
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "filmorate.read-replica.enabled", havingValue = "true")
+public class ReplicatedFilmStorage implements FilmStorage {
+    private final FilmStorage filmStorage;
+    private final ReadReplica replica;
+
+    @Autowired
+    public ReplicatedFilmStorage(@Qualifier("filmDbStorage") FilmStorage filmStorage, ReadReplica replica) {
+        this.filmStorage = filmStorage;
+        this.replica = replica;
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return replica.isFresh() ? films().findAll() : filmStorage.findAll();
+    }
+
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        if (replica.isFresh()) {
+            films().streamAll(consumer);
+        } else {
+            filmStorage.streamAll(consumer);
+        }
+    }
+
+    @Override
+    public List<Film> findPage(long afterId, int limit) {
+        return replica.isFresh() ? films().findPage(afterId, limit) : filmStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public Film findById(long id) throws ObjectNotFoundException {
+        return replica.isFresh() ? films().findById(id) : filmStorage.findById(id);
+    }
+
+    @Override
+    public List<Film> findByIds(List<Long> ids) {
+        return replica.isFresh() ? films().findByIds(ids) : filmStorage.findByIds(ids);
+    }
+
+    @Override
+    public Film create(Film film) {
+        return replica.write(() -> filmStorage.create(film), created -> films().save(created));
+    }
+
+    @Override
+    public Film put(Film film) throws ObjectNotFoundException {
+        return replica.write(() -> filmStorage.put(film), updated -> films().save(updated),
+                ReadReplica.filmKey(film.getId()));
+    }
+
+    @Override
+    public void deleteAll() {
+        replica.writeAll(() -> {
+            filmStorage.deleteAll();
+            return null;
+        }, ignored -> films().deleteAll());
+    }
+
+    @Override
+    public void delete(long filmId) throws ObjectNotFoundException {
+        replica.write(() -> {
+            filmStorage.delete(filmId);
+            return null;
+        }, ignored -> deleteReplicated(filmId), ReadReplica.filmKey(filmId));
+    }
+
+    @Override
+    public boolean addLike(long filmId, long userId) {
+        return replica.write(() -> filmStorage.addLike(filmId, userId), added -> {
+            if (added) {
+                films().addLike(filmId, userId);
+            }
+        }, ReadReplica.filmKey(filmId), ReadReplica.userKey(userId));
+    }
+
+    @Override
+    public boolean deleteLike(long filmId, long userId) {
+        return replica.write(() -> filmStorage.deleteLike(filmId, userId), deleted -> {
+            if (deleted) {
+                films().deleteLike(filmId, userId);
+            }
+        }, ReadReplica.filmKey(filmId), ReadReplica.userKey(userId));
+    }
+
+    //Пачка затрагивает много фильмов и пользователей, поэтому пишется отдельно от остальных записей
+    @Override
+    public void applyLikes(List<Like> added, List<Like> deleted) {
+        replica.writeAll(() -> {
+            filmStorage.applyLikes(added, deleted);
+            return null;
+        }, ignored -> films().applyLikes(added, deleted));
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count) {
+        return replica.isFresh() ? films().getPopularFilms(count) : filmStorage.getPopularFilms(count);
+    }
+
+    @Override
+    public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
+        return replica.isFresh() ? films().getPopularFilms(count, genreId, year)
+                : filmStorage.getPopularFilms(count, genreId, year);
+    }
+
+    @Override
+    public Map<Long, Long> findLikesCount() {
+        return replica.isFresh() ? films().findLikesCount() : filmStorage.findLikesCount();
+    }
+
+    @Override
+    public Map<Long, Long> findLikesCount(List<Long> filmIds) {
+        return replica.isFresh() ? films().findLikesCount(filmIds) : filmStorage.findLikesCount(filmIds);
+    }
+
+    @Override
+    public List<Long> findLikedFilmIds(long userId) {
+        return replica.isFresh() ? films().findLikedFilmIds(userId) : filmStorage.findLikedFilmIds(userId);
+    }
+
+    @Override
+    public void forEachLike(Consumer<Like> consumer) {
+        if (replica.isFresh()) {
+            films().forEachLike(consumer);
+        } else {
+            filmStorage.forEachLike(consumer);
+        }
+    }
+
+    @Override
+    public MPARating findMpaById(long id) throws ObjectNotFoundException {
+        return filmStorage.findMpaById(id);
+    }
+
+    @Override
+    public List<MPARating> findAllMpa() {
+        return filmStorage.findAllMpa();
+    }
+
+    @Override
+    public Genre findGenreById(long id) throws ObjectNotFoundException {
+        return filmStorage.findGenreById(id);
+    }
+
+    @Override
+    public List<Genre> findAllGenre() {
+        return filmStorage.findAllGenre();
+    }
+
+    //Копия берётся при каждом обращении: после перечитывания из БД она подменяется новой
+    private InMemoryFilmStorage films() {
+        return replica.films();
+    }
+
+    private void deleteReplicated(long filmId) {
+        try {
+            films().delete(filmId);
+        } catch (ObjectNotFoundException e) {
+            log.debug(String.format("Фильм %d уже удалён из копии.", filmId));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryUserStorage;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+//Записи идут в БД и через журнал ReadReplica в копию в памяти, чтения - из копии, пока она не отстала.
+@Slf4j
+@Component
+@Primary
+@ConditionalOnProperty(name = "filmorate.read-replica.enabled", havingValue = "true")
+public class ReplicatedUserStorage implements UserStorage {
+    private final UserStorage userStorage;
+    private final ReadReplica replica;
+
+    @Autowired
+    public ReplicatedUserStorage(@Qualifier("userDbStorage") UserStorage userStorage, ReadReplica replica) {
+        this.userStorage = userStorage;
+        this.replica = replica;
+    }
+
+    @Override
+    public List<User> findAll() {
+        return replica.isFresh() ? users().findAll() : userStorage.findAll();
+    }
+
+    @Override
+    public void streamAll(Consumer<User> consumer) {
+        if (replica.isFresh()) {
+            users().streamAll(consumer);
+        } else {
+            userStorage.streamAll(consumer);
+        }
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return replica.isFresh() ? users().findPage(afterId, limit) : userStorage.findPage(afterId, limit);
+    }
+
+    @Override
+    public User findById(long id) throws ObjectNotFoundException {
+        return replica.isFresh() ? users().findById(id) : userStorage.findById(id);
+    }
+
+    @Override
+    public List<User> findByIds(List<Long> ids) {
+        return replica.isFresh() ? users().findByIds(ids) : userStorage.findByIds(ids);
+    }
+
+    @Override
+    public User create(User user) {
+        return replica.write(() -> userStorage.create(user), created -> users().save(created));
+    }
+
+    @Override
+    public User put(User user) throws ObjectNotFoundException {
+        return replica.write(() -> userStorage.put(user), updated -> users().save(updated),
+                ReadReplica.userKey(user.getId()));
+    }
+
+    @Override
+    public void deleteAll() {
+        replica.writeAll(() -> {
+            userStorage.deleteAll();
+            return null;
+        }, ignored -> users().deleteAll());
+    }
+
+    //Удаление пользователя убирает и его лайки, поэтому идёт под тем же ключом, что и лайки пользователя
+    @Override
+    public void delete(long userId) throws ObjectNotFoundException {
+        replica.write(() -> {
+            userStorage.delete(userId);
+            return null;
+        }, ignored -> deleteReplicated(userId), ReadReplica.userKey(userId));
+    }
+
+    //Обе записи пары в FRIENDS меняются под блокировками обоих пользователей
+    @Override
+    public void addFriend(Long userId, Long friendId) {
+        replica.write(() -> {
+            userStorage.addFriend(userId, friendId);
+            return null;
+        }, ignored -> users().addFriend(userId, friendId),
+                ReadReplica.userKey(userId), ReadReplica.userKey(friendId));
+    }
+
+    @Override
+    public boolean deleteFriend(Long userId, Long friendId) {
+        return replica.write(() -> userStorage.deleteFriend(userId, friendId), deleted -> {
+            if (deleted) {
+                users().deleteFriend(userId, friendId);
+            }
+        }, ReadReplica.userKey(userId), ReadReplica.userKey(friendId));
+    }
+
+    @Override
+    public List<User> getFriends(Long userId) {
+        return replica.isFresh() ? users().getFriends(userId) : userStorage.getFriends(userId);
+    }
+
+    @Override
+    public List<User> getFriendsPage(Long userId, long afterId, int limit) {
+        return replica.isFresh() ? users().getFriendsPage(userId, afterId, limit)
+                : userStorage.getFriendsPage(userId, afterId, limit);
+    }
+
+    @Override
+    public List<User> getCommonFriends(Long userId, Long otherId) {
+        return replica.isFresh() ? users().getCommonFriends(userId, otherId)
+                : userStorage.getCommonFriends(userId, otherId);
+    }
+
+    @Override
+    public List<MutualFriends> getMutualFriendsCounts(Long userId, List<Long> otherIds) {
+        return replica.isFresh() ? users().getMutualFriendsCounts(userId, otherIds)
+                : userStorage.getMutualFriendsCounts(userId, otherIds);
+    }
+
+    @Override
+    public List<MutualFriends> getFriendSuggestions(Long userId, int limit) {
+        return replica.isFresh() ? users().getFriendSuggestions(userId, limit)
+                : userStorage.getFriendSuggestions(userId, limit);
+    }
+
+    @Override
+    public void forEachFriendship(Consumer<Friendship> consumer) {
+        if (replica.isFresh()) {
+            users().forEachFriendship(consumer);
+        } else {
+            userStorage.forEachFriendship(consumer);
+        }
+    }
+
+    //Копия берётся при каждом обращении: после перечитывания из БД она подменяется новой
+    private InMemoryUserStorage users() {
+        return replica.users();
+    }
+
+    private void deleteReplicated(long userId) {
+        try {
+            users().delete(userId);
+        } catch (ObjectNotFoundException e) {
+            log.debug(String.format("Пользователь %d уже удалён из копии.", userId));
+        }
+    }
+}
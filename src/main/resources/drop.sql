@@ -0,0 +1,2 @@
+DROP TABLE IF EXISTS users, films, friends, likes, film_genres, MPA,
+    genres cascade ;
@@ -1,6 +1,3 @@
-DROP TABLE IF EXISTS users, films, friends, likes, film_genres, MPA,
-    genres cascade ;
-
 CREATE TABLE IF NOT EXISTS USERS (
                                      user_id INT PRIMARY KEY AUTO_INCREMENT,
                                      email VARCHAR NOT NULL,
@@ -18,8 +15,10 @@ CREATE TABLE IF NOT EXISTS FILMS (
                                      description VARCHAR,
                                      duration INT NOT NULL,
                                      mpa_id INT NOT NULL REFERENCES MPA(mpa_id),
-                                     release_date DATE
+                                     release_date DATE,
+                                     likes_count INT NOT NULL DEFAULT 0
 );
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON FILMS (likes_count DESC, film_id);
 CREATE TABLE IF NOT EXISTS GENRES (
                                       genre_id INT PRIMARY KEY AUTO_INCREMENT,
                                       genre_name VARCHAR
@@ -29,14 +28,17 @@ CREATE TABLE IF NOT EXISTS FILM_GENRES (
                                            genre_id INT REFERENCES GENRES(genre_id) ON DELETE CASCADE,
                                            PRIMARY KEY(film_id, genre_id)
 );
+CREATE INDEX IF NOT EXISTS film_genres_genre_idx ON FILM_GENRES (genre_id, film_id);
 CREATE TABLE IF NOT EXISTS LIKES (
                                      user_id INT REFERENCES USERS(user_id) ON DELETE CASCADE,
                                      film_id INT REFERENCES FILMS(film_id) ON DELETE CASCADE,
                                      PRIMARY KEY(user_id, film_id)
 );
+CREATE INDEX IF NOT EXISTS likes_film_idx ON LIKES (film_id, user_id);
 CREATE TABLE IF NOT EXISTS FRIENDS (
-                                       id INT PRIMARY KEY AUTO_INCREMENT,
-                                       user_id INT REFERENCES USERS(user_id) ON DELETE CASCADE,
-                                       friend_id INT REFERENCES USERS(user_id) ON DELETE CASCADE,
-                                       status BOOLEAN
-);
\ No newline at end of file
+                                       user_id INT NOT NULL REFERENCES USERS(user_id) ON DELETE CASCADE,
+                                       friend_id INT NOT NULL REFERENCES USERS(user_id) ON DELETE CASCADE,
+                                       status BOOLEAN NOT NULL,
+                                       PRIMARY KEY(user_id, friend_id)
+);
+CREATE INDEX IF NOT EXISTS friends_user_status_idx ON FRIENDS (user_id, status, friend_id);
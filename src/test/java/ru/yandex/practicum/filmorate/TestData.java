@@ -0,0 +1,33 @@
+package ru.yandex.practicum.filmorate;
+
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.List;
+
+//Данные для тестов с контекстом Spring. Контекст работает с БД в памяти
+//(src/test/resources/application.properties), которую каждый тест очищает перед началом
+public final class TestData {
+    private TestData() {
+    }
+
+    public static Film film(String name, Genre... genres) {
+        return new Film(0, name, "Описание", LocalDate.of(2000, 1, 1), 100, new MPARating(1, null),
+                List.of(genres));
+    }
+
+    public static User user(String login) {
+        return new User(0, login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1));
+    }
+
+    //Удаление через сервисы очищает и индексы в памяти
+    public static void clear(FilmService filmService, UserService userService) {
+        filmService.deleteAll();
+        userService.deleteAll();
+    }
+}
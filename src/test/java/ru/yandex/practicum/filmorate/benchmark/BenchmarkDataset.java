@@ -0,0 +1,167 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//Синтетические данные для JMH-бенчмарков: одинаковый набор строк для БД и для хранилищ в памяти
+final class BenchmarkDataset {
+    static final int FRIENDS_PER_USER = 20;
+    static final int LIKES_PER_FILM = 5;
+    static final int GENRES_PER_FILM = 2;
+    private static final int BATCH_SIZE = 10_000;
+    private static final LocalDate RELEASE_DATE = LocalDate.of(2000, 1, 1);
+    private static final LocalDate BIRTHDAY = LocalDate.of(1990, 1, 1);
+
+    static {
+        muteLogging();
+    }
+
+    private BenchmarkDataset() {
+    }
+
+    //Отладочный лог JdbcTemplate и сервисов на каждый вызов искажает замеры
+    static void muteLogging() {
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+    }
+
+    static SingleConnectionDataSource createDatabase(String name) {
+        final SingleConnectionDataSource dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "", true);
+        createSchema(dataSource);
+        return dataSource;
+    }
+
+    static void createSchema(DataSource dataSource) {
+        final ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+        populator.execute(dataSource);
+    }
+
+    //Фильмы с двумя жанрами и LIKES_PER_FILM лайками от случайных пользователей,
+    //пользователь users + 1 создаётся без лайков
+    static void fillFilms(JdbcTemplate jdbcTemplate, int films, int users) {
+        fillUsers(jdbcTemplate, users + 1);
+        final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= films; i++) {
+            rows.add(new Object[]{i, "film" + i, "description" + i, 90 + i % 60, i % 5 + 1,
+                    Date.valueOf(RELEASE_DATE)});
+            if (rows.size() == BATCH_SIZE || i == films) {
+                jdbcTemplate.batchUpdate("insert into FILMS(FILM_ID, FILM_NAME, DESCRIPTION, DURATION, MPA_ID, "
+                        + "RELEASE_DATE) values (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        for (int i = 1; i <= films; i++) {
+            for (int g = 0; g < GENRES_PER_FILM; g++) {
+                rows.add(new Object[]{i, (i + g) % 6 + 1});
+            }
+            if (rows.size() >= BATCH_SIZE || i == films) {
+                jdbcTemplate.batchUpdate("insert into FILM_GENRES(FILM_ID, GENRE_ID) values (?, ?)", rows);
+                rows.clear();
+            }
+        }
+        final Random random = new Random(42);
+        for (int i = 1; i <= films; i++) {
+            final int first = random.nextInt(users);
+            for (int l = 0; l < LIKES_PER_FILM; l++) {
+                rows.add(new Object[]{(first + l) % users + 1, i});
+            }
+            if (rows.size() >= BATCH_SIZE || i == films) {
+                jdbcTemplate.batchUpdate("insert into LIKES(USER_ID, FILM_ID) values (?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.update("update FILMS F set LIKES_COUNT = "
+                + "(select COUNT(*) from LIKES L where L.FILM_ID = F.FILM_ID)");
+    }
+
+    static void fillFilms(FilmStorage filmStorage, UserStorage userStorage, int films, int users) {
+        fillUsers(userStorage, users + 1);
+        for (int i = 1; i <= films; i++) {
+            final List<Genre> genres = new ArrayList<>(GENRES_PER_FILM);
+            for (int g = 0; g < GENRES_PER_FILM; g++) {
+                genres.add(new Genre((i + g) % 6 + 1, null));
+            }
+            filmStorage.create(new Film(0, "film" + i, "description" + i, RELEASE_DATE, 90 + i % 60,
+                    new MPARating(i % 5 + 1, null), genres));
+        }
+        final Random random = new Random(42);
+        for (int i = 1; i <= films; i++) {
+            final int first = random.nextInt(users);
+            for (int l = 0; l < LIKES_PER_FILM; l++) {
+                filmStorage.addLike(i, (first + l) % users + 1);
+            }
+        }
+    }
+
+    //Каждый пользователь дружит с FRIENDS_PER_USER другими, всего users * FRIENDS_PER_USER строк FRIENDS
+    static void fillFriends(JdbcTemplate jdbcTemplate, int users) {
+        fillUsers(jdbcTemplate, users);
+        final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= users; i++) {
+            for (int k = 1; k <= FRIENDS_PER_USER; k++) {
+                rows.add(new Object[]{i, friendOf(i, k, users), true});
+            }
+            if (rows.size() >= BATCH_SIZE || i == users) {
+                jdbcTemplate.batchUpdate("insert into FRIENDS(USER_ID, FRIEND_ID, STATUS) values (?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+    }
+
+    static void fillFriends(UserStorage userStorage, int users) {
+        fillUsers(userStorage, users);
+        for (long i = 1; i <= users; i++) {
+            for (int k = 1; k <= FRIENDS_PER_USER; k++) {
+                userStorage.addFriend(i, (long) friendOf(i, k, users));
+            }
+        }
+    }
+
+    //Пользователь, у которого FRIENDS_PER_USER - 1 общих друзей с userId
+    static long other(long userId, int users) {
+        return (userId + 96) % users + 1;
+    }
+
+    private static int friendOf(long userId, int k, int users) {
+        return (int) ((userId + k * 97L) % users + 1);
+    }
+
+    private static void fillUsers(JdbcTemplate jdbcTemplate, int users) {
+        final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= users; i++) {
+            rows.add(new Object[]{i, "user" + i + "@mail.ru", "user" + i, "user" + i, Date.valueOf(BIRTHDAY)});
+            if (rows.size() == BATCH_SIZE || i == users) {
+                jdbcTemplate.batchUpdate("insert into USERS(USER_ID, EMAIL, LOGIN, USER_NAME, BIRTHDAY) "
+                        + "values (?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.execute("alter table USERS alter column USER_ID restart with " + (users + 1));
+    }
+
+    private static void fillUsers(UserStorage userStorage, int users) {
+        for (int i = 1; i <= users; i++) {
+            userStorage.create(new User(0, "user" + i + "@mail.ru", "user" + i, "user" + i, BIRTHDAY));
+        }
+    }
+}
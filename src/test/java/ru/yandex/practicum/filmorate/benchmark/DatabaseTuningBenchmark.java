@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+import ru.yandex.practicum.filmorate.storage.database.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.database.ReferenceDataDictionary;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntFunction;
+
+//Подбирает настройки профиля prod под число ядер: размер пула Hikari, кэш страниц H2 (CACHE_SIZE)
+//и WRITE_DELAY. Нагрузка - смесь чтений и лайков через FilmDbStorage на файловой БД из CORES * 16 потоков.
+//Для каждой настройки выбирается наименьшее значение, дающее не меньше 95% лучшей пропускной способности.
+//Запуск: mvn test -Pbenchmark -Dtest=DatabaseTuningBenchmark
+@Tag("benchmark")
+class DatabaseTuningBenchmark {
+    private static final int FILMS = 100_000;
+    private static final int USERS = 10_000;
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int WORKERS = CORES * 16;
+    private static final Duration WARMUP = Duration.ofSeconds(2);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(5);
+    private static final double TOLERANCE = 0.95;
+    private static final Path DIRECTORY = Path.of("target", "tuning-benchmark");
+    //Значения H2 по умолчанию
+    private static final int DEFAULT_CACHE_SIZE_KB = 16 * 1024;
+    private static final int DEFAULT_WRITE_DELAY_MS = 500;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        BenchmarkDataset.muteLogging();
+        FileSystemUtils.deleteRecursively(DIRECTORY);
+        try (HikariDataSource dataSource = open(1, DEFAULT_CACHE_SIZE_KB, DEFAULT_WRITE_DELAY_MS)) {
+            BenchmarkDataset.createSchema(dataSource);
+            BenchmarkDataset.fillFilms(new JdbcTemplate(dataSource), FILMS, USERS);
+        }
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        FileSystemUtils.deleteRecursively(DIRECTORY);
+    }
+
+    @Test
+    void pickDefaults() throws Exception {
+        final int poolSize = pick("filmorate.db.pool-size", new TreeSet<>(List.of(1, CORES, CORES * 2, CORES * 4,
+                CORES * 8)), size -> measure(size, DEFAULT_CACHE_SIZE_KB, DEFAULT_WRITE_DELAY_MS));
+        final int cacheSize = pick("filmorate.h2.cache-size-kb", new TreeSet<>(List.of(DEFAULT_CACHE_SIZE_KB,
+                64 * 1024, 256 * 1024)), size -> measure(poolSize, size, DEFAULT_WRITE_DELAY_MS));
+        final int writeDelay = pick("filmorate.h2.write-delay-ms", new TreeSet<>(List.of(0, DEFAULT_WRITE_DELAY_MS,
+                2000)), delay -> measure(poolSize, cacheSize, delay));
+        System.out.printf("Для %d ядер: filmorate.db.pool-size=%d, filmorate.h2.cache-size-kb=%d, "
+                + "filmorate.h2.write-delay-ms=%d%n", CORES, poolSize, cacheSize, writeDelay);
+    }
+
+    private static int pick(String property, TreeSet<Integer> values, IntFunction<Double> throughput) {
+        final List<Double> results = new ArrayList<>(values.size());
+        for (int value : values) {
+            final double result = throughput.apply(value);
+            System.out.printf("%s=%d: %.0f операций/с%n", property, value, result);
+            results.add(result);
+        }
+        final double best = results.stream().mapToDouble(Double::doubleValue).max().orElse(0);
+        int index = 0;
+        for (int value : values) {
+            if (results.get(index++) >= best * TOLERANCE) {
+                return value;
+            }
+        }
+        return values.last();
+    }
+
+    private static double measure(int poolSize, int cacheSizeKb, int writeDelayMs) {
+        try (HikariDataSource dataSource = open(poolSize, cacheSizeKb, writeDelayMs)) {
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            final FilmDbStorage storage = new FilmDbStorage(jdbcTemplate, new ReferenceDataDictionary(jdbcTemplate));
+            run(storage, WARMUP);
+            return run(storage, MEASUREMENT) / (double) MEASUREMENT.toSeconds();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //Три четверти операций - чтения фильма и популярных, остальные - лайк или его отмена
+    private static long run(FilmDbStorage storage, Duration duration) throws Exception {
+        final ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        final long deadline = System.nanoTime() + duration.toNanos();
+        final List<Future<Long>> futures = new ArrayList<>(WORKERS);
+        for (int i = 0; i < WORKERS; i++) {
+            //У каждого потока свой пользователь: лайк и его отмена одной пары не выполняются параллельно
+            final long userId = i + 1;
+            futures.add(workers.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                long operations = 0;
+                while (System.nanoTime() < deadline) {
+                    final long filmId = random.nextInt(FILMS) + 1;
+                    final int operation = random.nextInt(4);
+                    if (operation == 0) {
+                        if (!storage.deleteLike(filmId, userId)) {
+                            storage.addLike(filmId, userId);
+                        }
+                    } else if (operation == 1) {
+                        storage.getPopularFilms(10);
+                    } else {
+                        storage.findById(filmId);
+                    }
+                    operations++;
+                }
+                return operations;
+            }));
+        }
+        long operations = 0;
+        for (Future<Long> future : futures) {
+            operations += future.get();
+        }
+        workers.shutdown();
+        return operations;
+    }
+
+    private static HikariDataSource open(int poolSize, int cacheSizeKb, int writeDelayMs) {
+        final HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:file:" + DIRECTORY.toAbsolutePath().resolve("filmorate") + ";CACHE_SIZE="
+                + cacheSizeKb + ";WRITE_DELAY=" + writeDelayMs + ";LOCK_TIMEOUT=10000");
+        config.setUsername("sa");
+        config.setMaximumPoolSize(poolSize);
+        config.setMinimumIdle(poolSize);
+        return new HikariDataSource(config);
+    }
+}
@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.service.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.service.PopularityIndex;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+//Поиск по FilmSearchIndex на rows фильмах. Названия и описания собираются из словаря,
+//частота слова убывает с его номером, поэтому есть и частые, и редкие слова
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilmSearchBenchmark {
+    private static final int LIMIT = 100;
+    private static final int VOCABULARY = 20_000;
+    private static final int TITLE_WORDS = 3;
+    private static final int DESCRIPTION_WORDS = 12;
+    private static final int LIKES_PER_FILM = 5;
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    private FilmSearchIndex index;
+    private PopularityIndex popularityIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDataset.muteLogging();
+        final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        final Random random = new Random(42);
+        for (int i = 1; i <= rows; i++) {
+            final Film film = filmStorage.create(new Film(0, text(random, TITLE_WORDS), text(random, DESCRIPTION_WORDS),
+                    LocalDate.of(2000, 1, 1), 90, new MPARating(1, null), List.of()));
+            for (int user = random.nextInt(LIKES_PER_FILM * 2); user > 0; user--) {
+                filmStorage.addLike(film.getId(), user);
+            }
+        }
+        index = new FilmSearchIndex(filmStorage, new ResourceVersions());
+        index.warmUp();
+        popularityIndex = new PopularityIndex(filmStorage);
+        popularityIndex.warmUp();
+    }
+
+    //Редкое слово: несколько десятков совпадений
+    @Benchmark
+    public List<Long> rareWord() {
+        return index.search(word(VOCABULARY / 2), true, true, LIMIT, popularityIndex);
+    }
+
+    //Два частых слова: большие списки, пересечение заметно меньше
+    @Benchmark
+    public List<Long> twoCommonWords() {
+        return index.search(word(1) + " " + word(2), true, true, LIMIT, popularityIndex);
+    }
+
+    //Самое частое слово только в названиях
+    @Benchmark
+    public List<Long> commonWordByTitle() {
+        return index.search(word(0), true, false, LIMIT, popularityIndex);
+    }
+
+    private static String text(Random random, int words) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            //Номер слова распределён примерно как 1/x
+            final int rank = (int) Math.pow(VOCABULARY, random.nextDouble()) - 1;
+            text.append(i == 0 ? "" : " ").append(word(rank));
+        }
+        return text.toString();
+    }
+
+    private static String word(int rank) {
+        return "слово" + Integer.toString(rank, 36);
+    }
+}
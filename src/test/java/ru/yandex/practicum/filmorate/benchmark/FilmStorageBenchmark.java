@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.database.ReferenceDataDictionary;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Горячие пути FilmStorage на rows фильмах (по LIKES_PER_FILM лайков и GENRES_PER_FILM жанров у каждого)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilmStorageBenchmark {
+    private static final int POPULAR_COUNT = 10;
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"db", "memory"})
+    private String storage;
+
+    private FilmStorage filmStorage;
+    private SingleConnectionDataSource dataSource;
+    private int users;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        users = Math.max(1000, rows / 100);
+        if ("db".equals(storage)) {
+            dataSource = BenchmarkDataset.createDatabase("films" + rows);
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            BenchmarkDataset.fillFilms(jdbcTemplate, rows, users);
+            filmStorage = new FilmDbStorage(jdbcTemplate, new ReferenceDataDictionary(jdbcTemplate));
+        } else {
+            final InMemoryFilmStorage inMemoryFilmStorage = new InMemoryFilmStorage();
+            BenchmarkDataset.fillFilms(inMemoryFilmStorage, new InMemoryUserStorage(inMemoryFilmStorage), rows, users);
+            filmStorage = inMemoryFilmStorage;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        filmStorage.deleteAll();
+        if (dataSource != null) {
+            new JdbcTemplate(dataSource).execute("drop all objects");
+            dataSource.destroy();
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Film> findAll() {
+        return filmStorage.findAll();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Film findById() throws ObjectNotFoundException {
+        return filmStorage.findById(ThreadLocalRandom.current().nextInt(rows) + 1);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Film> getPopularFilms() {
+        return filmStorage.getPopularFilms(POPULAR_COUNT);
+    }
+
+    //Лайк ставит пользователь без лайков и сразу снимает, чтобы набор данных не менялся между итерациями
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean addLike() {
+        final long filmId = ThreadLocalRandom.current().nextInt(rows) + 1;
+        final boolean added = filmStorage.addLike(filmId, users + 1);
+        if (added) {
+            filmStorage.deleteLike(filmId, users + 1);
+        }
+        return added;
+    }
+}
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.database.FriendshipGraph;
+import ru.yandex.practicum.filmorate.storage.database.UserDbStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Сравнивает запросы друзей на старой схеме FRIENDS (суррогатный id, без индексов)
+//и в текущем UserDbStorage (schema.sql и FriendshipGraph) при 1 000 000 записей о дружбе.
+//Запуск: mvn test -Pjmh -Djmh.args="FriendsQueryBenchmark"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FriendsQueryBenchmark {
+    private static final int USERS = 50_000;
+
+    private static final String OLD_SCHEMA = "create table USERS (USER_ID INT PRIMARY KEY AUTO_INCREMENT, "
+            + "EMAIL VARCHAR NOT NULL, LOGIN VARCHAR NOT NULL, USER_NAME VARCHAR NOT NULL, BIRTHDAY DATE);"
+            + "create table FRIENDS (ID INT PRIMARY KEY AUTO_INCREMENT, "
+            + "USER_ID INT REFERENCES USERS(USER_ID) ON DELETE CASCADE, "
+            + "FRIEND_ID INT REFERENCES USERS(USER_ID) ON DELETE CASCADE, STATUS BOOLEAN)";
+    private static final String OLD_GET_FRIENDS = "select * from USERS where USER_ID in "
+            + "(select FRIEND_ID from FRIENDS where USER_ID = ? AND STATUS = TRUE)";
+    private static final String OLD_GET_COMMON_FRIENDS = "select * from USERS where USER_ID in"
+            + "(select * from (select FRIEND_ID from FRIENDS where USER_ID=? AND STATUS = TRUE)"
+            + "where FRIEND_ID in (select FRIEND_ID from FRIENDS where USER_ID=? AND STATUS = TRUE))";
+
+    @Param({"old", "new"})
+    private String schema;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserDbStorage userStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("old".equals(schema)) {
+            dataSource = new SingleConnectionDataSource("jdbc:h2:mem:friends_old;DB_CLOSE_DELAY=-1", "sa", "", true);
+            jdbcTemplate = new JdbcTemplate(dataSource);
+            for (String statement : OLD_SCHEMA.split(";")) {
+                jdbcTemplate.execute(statement);
+            }
+        } else {
+            dataSource = BenchmarkDataset.createDatabase("friends_new");
+            jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+        BenchmarkDataset.fillFriends(jdbcTemplate, USERS);
+        userStorage = new UserDbStorage(jdbcTemplate, new FriendshipGraph(jdbcTemplate));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        jdbcTemplate.execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        final long userId = ThreadLocalRandom.current().nextLong(USERS) + 1;
+        if ("old".equals(schema)) {
+            return jdbcTemplate.query(OLD_GET_FRIENDS, UserDbStorage::makeUser, userId);
+        }
+        return userStorage.getFriends(userId);
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        final long userId = ThreadLocalRandom.current().nextLong(USERS) + 1;
+        final long otherId = BenchmarkDataset.other(userId, USERS);
+        if ("old".equals(schema)) {
+            return jdbcTemplate.query(OLD_GET_COMMON_FRIENDS, UserDbStorage::makeUser, userId, otherId);
+        }
+        return userStorage.getCommonFriends(userId, otherId);
+    }
+}
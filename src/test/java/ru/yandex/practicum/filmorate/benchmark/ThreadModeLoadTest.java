@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Нагрузочное сравнение обработки запросов на пуле потоков Tomcat и на виртуальных потоках
+//(spring.threads.virtual.enabled) по существующим эндпоинтам. Виртуальные потоки замеряются только на Java 21+.
+//Запуск: mvn test -Pbenchmark -Dtest=ThreadModeLoadTest
+@Tag("benchmark")
+class ThreadModeLoadTest {
+    private static final int FILMS = 100_000;
+    private static final int USERS = 10_000;
+    private static final int CLIENTS = 800;
+    private static final Duration WARMUP = Duration.ofSeconds(10);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(30);
+    private static final String DATABASE = "thread_mode_load";
+
+    private static SingleConnectionDataSource dataSource;
+
+    @BeforeAll
+    static void setUp() {
+        //База живёт, пока открыт dataSource (DB_CLOSE_DELAY=-1), и общая для обоих запусков приложения
+        dataSource = BenchmarkDataset.createDatabase(DATABASE);
+        BenchmarkDataset.fillFilms(new JdbcTemplate(dataSource), FILMS, USERS);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        new JdbcTemplate(dataSource).execute("drop all objects");
+        dataSource.destroy();
+    }
+
+    @Test
+    void compareThreadModes() throws Exception {
+        final Result platform = run(false);
+        report("пул потоков", platform);
+        if (Runtime.version().feature() < 21) {
+            System.out.println("Виртуальные потоки не замерены: нужна Java 21+, запущено на Java "
+                    + Runtime.version().feature());
+            return;
+        }
+        final Result virtual = run(true);
+        report("виртуальные потоки", virtual);
+        System.out.printf("Пропускная способность: x%.2f, p99: x%.2f%n",
+                virtual.throughput / platform.throughput, platform.p99Millis / virtual.p99Millis);
+    }
+
+    private static Result run(boolean virtualThreads) throws Exception {
+        //Аргументы командной строки, а не properties(): те ниже application.properties по приоритету
+        final ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:" + DATABASE + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.password=",
+                        "--spring.sql.init.mode=never",
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--logging.level.root=WARN");
+        try {
+            final int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            load(client, port, WARMUP);
+            return load(client, port, MEASUREMENT);
+        } finally {
+            context.close();
+        }
+    }
+
+    //CLIENTS клиентов без пауз шлют запросы вперемешку на чтение фильмов, популярных, поиска и рекомендаций
+    private static Result load(HttpClient client, int port, Duration duration) throws Exception {
+        final ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        final long deadline = System.nanoTime() + duration.toNanos();
+        final List<Future<long[]>> futures = new ArrayList<>(CLIENTS);
+        for (int i = 0; i < CLIENTS; i++) {
+            futures.add(clients.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                while (System.nanoTime() < deadline) {
+                    final long started = System.nanoTime();
+                    final HttpResponse<Void> response = client.send(HttpRequest.newBuilder(uri(port)).build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Ответ " + response.statusCode() + " на " + response.uri());
+                    }
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = System.nanoTime() - started;
+                }
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+        final List<long[]> results = new ArrayList<>(CLIENTS);
+        for (Future<long[]> future : futures) {
+            results.add(future.get());
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.MINUTES);
+        final long[] latencies = results.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        return new Result(latencies.length / (double) duration.toSeconds(),
+                percentile(latencies, 0.5), percentile(latencies, 0.99));
+    }
+
+    private static URI uri(int port) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String path;
+        switch (random.nextInt(4)) {
+            case 0:
+                path = "/films/" + (random.nextInt(FILMS) + 1);
+                break;
+            case 1:
+                path = "/films/popular?count=10&genreId=" + (random.nextInt(6) + 1);
+                break;
+            case 2:
+                path = "/films/search?query=description" + (random.nextInt(FILMS) + 1);
+                break;
+            default:
+                path = "/users/" + (random.nextInt(USERS) + 1) + "/recommendations";
+        }
+        return URI.create("http://localhost:" + port + path);
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        return sorted.length == 0 ? 0 : sorted[(int) Math.min(sorted.length - 1, sorted.length * quantile)] / 1e6;
+    }
+
+    private static void report(String mode, Result result) {
+        System.out.printf("%s, %d клиентов: %.0f запросов/с, p50 %.2f мс, p99 %.2f мс%n",
+                mode, CLIENTS, result.throughput, result.p50Millis, result.p99Millis);
+    }
+
+    private static final class Result {
+        private final double throughput;
+        private final double p50Millis;
+        private final double p99Millis;
+
+        private Result(double throughput, double p50Millis, double p99Millis) {
+            this.throughput = throughput;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.database.FriendshipGraph;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.database.UserDbStorage;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//Запросы друзей на rows строках FRIENDS (rows / FRIENDS_PER_USER пользователей)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UserStorageBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int rows;
+
+    @Param({"db", "memory"})
+    private String storage;
+
+    private UserStorage userStorage;
+    private SingleConnectionDataSource dataSource;
+    private int users;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        users = rows / BenchmarkDataset.FRIENDS_PER_USER;
+        if ("db".equals(storage)) {
+            dataSource = BenchmarkDataset.createDatabase("friends" + rows);
+            final JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            BenchmarkDataset.fillFriends(jdbcTemplate, users);
+            userStorage = new UserDbStorage(jdbcTemplate, new FriendshipGraph(jdbcTemplate));
+        } else {
+            userStorage = new InMemoryUserStorage(new InMemoryFilmStorage());
+            BenchmarkDataset.fillFriends(userStorage, users);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (dataSource != null) {
+            new JdbcTemplate(dataSource).execute("drop all objects");
+            dataSource.destroy();
+        }
+    }
+
+    @Benchmark
+    public List<User> getFriends() {
+        return userStorage.getFriends(ThreadLocalRandom.current().nextLong(users) + 1);
+    }
+
+    @Benchmark
+    public List<User> getCommonFriends() {
+        final long userId = ThreadLocalRandom.current().nextLong(users) + 1;
+        return userStorage.getCommonFriends(userId, BenchmarkDataset.other(userId, users));
+    }
+}
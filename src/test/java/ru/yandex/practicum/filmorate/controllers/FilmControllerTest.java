@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.PopularFeedCache;
+import ru.yandex.practicum.filmorate.service.ResourceVersions;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class FilmControllerTest {
+    private final ResourceVersions versions = new ResourceVersions();
+    private FilmService filmService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        filmService = mock(FilmService.class);
+        when(filmService.getPopularFilms(10, null, null)).thenReturn(List.of(new Film(1, "Фильм", "Описание",
+                LocalDate.of(2000, 1, 1), 100, new MPARating(1, null), List.of())));
+        final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final PopularFeedCache popularFeed = new PopularFeedCache(filmService, objectMapper, versions, registry, 16);
+        mockMvc = MockMvcBuilders.standaloneSetup(new FilmController(filmService, objectMapper, versions, popularFeed))
+                .setControllerAdvice(new ErrorHandler(registry))
+                .build();
+    }
+
+    //If-None-Match с версией рейтинга - 304 без сборки ответа, после лайка - новый ответ
+    @Test
+    void popularFeedAnswersNotModifiedUntilVersionChanges() throws Exception {
+        final String eTag = mockMvc.perform(get("/films/popular"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, versions.popularTag()))
+                .andExpect(jsonPath("$[0].name").value("Фильм"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/films/popular").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        verify(filmService, times(1)).getPopularFilms(10, null, null);
+
+        versions.filmChanged(1);
+        mockMvc.perform(get("/films/popular").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, versions.popularTag()));
+        verify(filmService, times(2)).getPopularFilms(10, null, null);
+    }
+
+    @Test
+    void nonPositiveCountIsRejected() throws Exception {
+        mockMvc.perform(get("/films/popular").param("count", "0"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(filmService);
+    }
+}
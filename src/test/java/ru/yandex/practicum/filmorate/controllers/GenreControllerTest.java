@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class GenreControllerTest {
+    private FilmService filmService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        filmService = mock(FilmService.class);
+        when(filmService.findAllGenre()).thenReturn(List.of(new Genre(1, "Комедия"), new Genre(2, "Драма")));
+        mockMvc = MockMvcBuilders.standaloneSetup(new GenreController(filmService, new ObjectMapper()))
+                .setControllerAdvice(new ErrorHandler(new SimpleMeterRegistry()))
+                .build();
+    }
+
+    //Ответы собираются при создании контроллера, запросы не обращаются к сервису
+    @Test
+    void servesPreSerializedGenres() throws Exception {
+        mockMvc.perform(get("/genres"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"id\":1,\"name\":\"Комедия\"},{\"id\":2,\"name\":\"Драма\"}]"));
+        mockMvc.perform(get("/genres/2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Драма"));
+
+        verify(filmService).findAllGenre();
+        verifyNoMoreInteractions(filmService);
+    }
+
+    @Test
+    void answersNotModifiedForMatchingETag() throws Exception {
+        final String eTag = mockMvc.perform(get("/genres/1"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/genres/1").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mockMvc.perform(get("/genres/2").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void unknownGenreIsNotFound() throws Exception {
+        mockMvc.perform(get("/genres/99"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.description").value("Неизвестный жанр"));
+    }
+}
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class NdjsonStreamTest {
+    private static final int FILMS_COUNT = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+
+    @BeforeEach
+    void setUp() {
+        TestData.clear(filmService, userService);
+        for (int i = 0; i < FILMS_COUNT; i++) {
+            filmService.create(TestData.film("Фильм " + i, new Genre(2, null), new Genre(1, null)));
+        }
+        userService.create(TestData.user("user"));
+    }
+
+    //Accept: application/x-ndjson - по объекту на строку, жанры в том же порядке, что и в обычном ответе
+    @Test
+    void streamsOneObjectPerLine() throws Exception {
+        final String[] lines = stream("/films").split("\n");
+
+        assertEquals(FILMS_COUNT, lines.length);
+        for (int i = 0; i < FILMS_COUNT; i++) {
+            final JsonNode film = objectMapper.readTree(lines[i]);
+            assertEquals("Фильм " + i, film.get("name").asText());
+            assertEquals(1, film.get("genres").get(0).get("id").asInt());
+            assertEquals(2, film.get("genres").get(1).get("id").asInt());
+        }
+        assertEquals("user", objectMapper.readTree(stream("/users").trim()).get("login").asText());
+    }
+
+    //Без явного запроса NDJSON отдаётся обычный JSON-массив
+    @Test
+    void otherAcceptHeadersGetJsonArray() throws Exception {
+        for (String accept : new String[]{MediaType.ALL_VALUE, MediaType.APPLICATION_JSON_VALUE}) {
+            mockMvc.perform(get("/films").header(HttpHeaders.ACCEPT, accept))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                    .andExpect(jsonPath("$.length()").value(FILMS_COUNT));
+        }
+    }
+
+    private String stream(String path) throws Exception {
+        final MvcResult started = mockMvc.perform(get(path).header(HttpHeaders.ACCEPT, NdjsonStream.MEDIA_TYPE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(NdjsonStream.MEDIA_TYPE))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+    }
+}
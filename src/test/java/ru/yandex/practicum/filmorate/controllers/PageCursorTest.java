@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PageCursorTest {
+    private static final int COUNT = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    private final List<Long> filmIds = new ArrayList<>();
+    private final List<Long> userIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        TestData.clear(filmService, userService);
+        for (int i = 0; i < COUNT; i++) {
+            filmIds.add(filmService.create(TestData.film("Фильм " + i)).getId());
+            userIds.add(userService.create(TestData.user("user" + i)).getId());
+        }
+        //Друзья первого пользователя - все остальные, у второго первый в друзьях без подтверждения
+        for (int i = 1; i < COUNT; i++) {
+            userService.addFriend(userIds.get(0), userIds.get(i));
+        }
+    }
+
+    //Страницы идут по курсору из X-Next-Cursor, у последней страницы заголовка нет
+    @Test
+    void pagesFollowNextCursor() throws Exception {
+        assertEquals(filmIds, walk("/films", 2));
+        assertEquals(userIds, walk("/users", 2));
+        assertEquals(userIds.subList(1, COUNT), walk("/users/" + userIds.get(0) + "/friends", 3));
+        assertEquals(List.of(), walk("/users/" + userIds.get(1) + "/friends", 3));
+        //Лимит, равный размеру списка, не оставляет пустой последней страницы
+        assertEquals(filmIds, walk("/films", COUNT));
+    }
+
+    @Test
+    void afterStartsPageAfterCursorId() throws Exception {
+        mockMvc.perform(get("/users").param("after", PageCursor.encode(userIds.get(2))))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(PageCursor.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].id").value(userIds.get(3)));
+    }
+
+    @Test
+    void invalidLimitOrCursorIsRejected() throws Exception {
+        mockMvc.perform(get("/films").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("limit", String.valueOf(PageCursor.MAX_LIMIT + 1)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("after", "не курсор")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/" + userIds.get(0) + "/friends").param("after", "abc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private List<Long> walk(String path, int limit) throws Exception {
+        final List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            final MockHttpServletResponse response = mockMvc.perform(get(path)
+                            .param("limit", String.valueOf(limit))
+                            .param("after", cursor == null ? "" : cursor))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+            final JsonNode page = objectMapper.readTree(response.getContentAsString(StandardCharsets.UTF_8));
+            page.forEach(item -> ids.add(item.get("id").asLong()));
+            cursor = response.getHeader(PageCursor.NEXT_CURSOR_HEADER);
+        } while (cursor != null);
+        return ids;
+    }
+}
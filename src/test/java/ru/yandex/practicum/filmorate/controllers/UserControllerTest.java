@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.controllers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private UserService userService;
+    private final List<Long> ids = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        userService.deleteAll();
+        for (int i = 0; i < 3; i++) {
+            ids.add(userService.create(TestData.user("user" + i)).getId());
+        }
+        userService.addFriend(ids.get(0), ids.get(2));
+        userService.addFriend(ids.get(1), ids.get(2));
+    }
+
+    @Test
+    void mutualFriendsAreCountedForEveryId() throws Exception {
+        mockMvc.perform(get("/users/{id}/friends/common", ids.get(0)).param("ids", ids.get(1) + "," + ids.get(2)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].userId").value(ids.get(1)))
+                .andExpect(jsonPath("$[0].mutualFriends").value(1));
+    }
+
+    //Неизвестный id в списке - 404, как и для пары пользователей
+    @Test
+    void unknownIdIsNotFound() throws Exception {
+        final long unknown = ids.get(2) + 100;
+        mockMvc.perform(get("/users/{id}/friends/common", ids.get(0)).param("ids", ids.get(1) + "," + unknown))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.description").value("Пользователь с id " + unknown + " не найден"));
+        mockMvc.perform(post("/users/{id}/friends/common", ids.get(0))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + unknown + "]"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.controllers.ErrorHandler;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class MetricsTest {
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry registry;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private ErrorHandler errorHandler;
+
+    private Film film;
+
+    @BeforeEach
+    void setUp() {
+        TestData.clear(filmService, userService);
+        film = filmService.create(TestData.film("Фильм"));
+    }
+
+    //Вызов через кэш замеряется один раз - в кэше, обращение кэша к БД отдельно не считается
+    @Test
+    void storageCallIsTimedOnceAtOutermostBean() throws Exception {
+        final long service = timed(MethodTimingAspect.SERVICE_TIMER, "FilmServiceImpl", "findById");
+        final long cached = timed(MethodTimingAspect.STORAGE_TIMER, "CachedFilmStorage", "findById");
+        final long database = timed(MethodTimingAspect.STORAGE_TIMER, "FilmDbStorage", "findById");
+
+        mockMvc.perform(get("/films/" + film.getId())).andExpect(status().isOk());
+
+        assertEquals(service + 1, timed(MethodTimingAspect.SERVICE_TIMER, "FilmServiceImpl", "findById"));
+        assertEquals(cached + 1, timed(MethodTimingAspect.STORAGE_TIMER, "CachedFilmStorage", "findById"));
+        assertEquals(database, timed(MethodTimingAspect.STORAGE_TIMER, "FilmDbStorage", "findById"));
+    }
+
+    @Test
+    void statementsAreCountedPerRequest() throws Exception {
+        final double total = registry.get(StatementCounter.STATEMENTS_COUNTER).counter().count();
+
+        mockMvc.perform(get("/films")).andExpect(status().isOk());
+
+        assertTrue(registry.get(StatementCounter.STATEMENTS_COUNTER).counter().count() > total);
+        final DistributionSummary perRequest = registry.get(RequestStatementsFilter.STATEMENTS_PER_REQUEST)
+                .tag("method", "GET").tag("uri", "/films").summary();
+        assertTrue(perRequest.count() > 0);
+    }
+
+    @Test
+    void errorsAreCountedByBranch() throws Exception {
+        final double validation = errors("validation");
+        final double notFound = errors("not_found");
+        final double unexpected = errors("unexpected");
+
+        mockMvc.perform(get("/films/" + (film.getId() + 1))).andExpect(status().isNotFound());
+        mockMvc.perform(post("/films").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Фильм\",\"description\":\"Описание\",\"releaseDate\":\"1890-01-01\",\"duration\":100,\"mpa\":{\"id\":1}}"))
+                .andExpect(status().isBadRequest());
+        errorHandler.handleIncorrectParameter(new IllegalStateException("Сбой"));
+
+        assertEquals(validation + 1, errors("validation"));
+        assertEquals(notFound + 1, errors("not_found"));
+        assertEquals(unexpected + 1, errors("unexpected"));
+    }
+
+    private long timed(String name, String className, String method) {
+        final Timer timer = registry.find(name).tag("class", className).tag("method", method).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private double errors(String branch) {
+        final Counter counter = registry.find("filmorate.errors").tag("branch", branch).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
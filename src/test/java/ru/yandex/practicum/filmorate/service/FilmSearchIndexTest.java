@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FilmSearchIndexTest {
+    private PopularityIndex popularityIndex;
+
+    @Test
+    void tokenizeHandlesCyrillic() {
+        assertEquals(Set.of("ежик", "в", "тумане", "1975"), FilmSearchIndex.tokenize("Ёжик в ТУМАНЕ (1975)!"));
+        assertEquals(Set.of("криминальное", "чтиво", "pulp", "fiction"),
+                FilmSearchIndex.tokenize("Криминальное чтиво / Pulp-Fiction"));
+    }
+
+    @Test
+    void ranksByRelevanceThenLikes() {
+        final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        final FilmSearchIndex index = new FilmSearchIndex(filmStorage, new ResourceVersions());
+        final Film hedgehog = index(index, filmStorage, "Ёжик в тумане", "Мультфильм про ежика и медвежонка");
+        final Film bear = index(index, filmStorage, "Медвежонок", "Ежик зовёт медвежонка считать звёзды");
+        final Film fog = index(index, filmStorage, "Туман", "Ежик и туман");
+        filmStorage.addLike(bear.getId(), 1);
+        filmStorage.addLike(fog.getId(), 1);
+        filmStorage.addLike(fog.getId(), 2);
+        popularityIndex = new PopularityIndex(filmStorage);
+        popularityIndex.warmUp();
+
+        //Совпадение в названии весит больше, при равной релевантности выше фильм с большим числом лайков
+        assertEquals(List.of(hedgehog.getId(), fog.getId(), bear.getId()), search(index, "ежик", true, true));
+        assertEquals(List.of(fog.getId(), bear.getId()), search(index, "ежик", false, true));
+        assertEquals(List.of(fog.getId()), index.search("ежик", false, true, 1, null));
+        assertEquals(List.of(fog.getId()), search(index, "ёжик туман", true, true));
+        assertEquals(List.of(), search(index, "ежик медвежонок", true, false));
+
+        bear.setName("Ёжик и медвежонок");
+        index.put(bear);
+        index.remove(fog.getId());
+        assertEquals(List.of(bear.getId()), search(index, "медвежонок", true, false));
+        assertEquals(List.of(hedgehog.getId()), search(index, "тумане", true, true));
+        assertEquals(List.of(), search(index, "туман", true, true));
+    }
+
+    @Test
+    void largeLevelsFollowPopularityRanking() {
+        final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+        final FilmSearchIndex index = new FilmSearchIndex(filmStorage, new ResourceVersions());
+        for (int i = 0; i < 200; i++) {
+            final Film film = index(index, filmStorage, i % 2 == 0 ? "Туман" : "Ежик", "Ежик в тумане " + i);
+            for (long user = 1; user <= i % 5; user++) {
+                filmStorage.addLike(film.getId(), user);
+            }
+        }
+        popularityIndex = new PopularityIndex(filmStorage);
+        popularityIndex.warmUp();
+
+        //Обход рейтинга и прямой перебор дают одно и то же
+        for (int limit : new int[]{1, 5, 50, 150}) {
+            assertEquals(index.search("туман ежик", true, true, limit, null),
+                    index.search("туман ежик", true, true, limit, popularityIndex));
+            assertEquals(index.search("ежик", true, true, limit, null),
+                    index.search("ежик", true, true, limit, popularityIndex));
+        }
+    }
+
+    //Без рейтинга популярности лайки читаются из хранилища один раз на версию рейтинга
+    @Test
+    void likesAreReadOncePerVersionWithoutPopularityIndex() {
+        final AtomicInteger reads = new AtomicInteger();
+        final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage() {
+            @Override
+            public Map<Long, Long> findLikesCount() {
+                reads.incrementAndGet();
+                return super.findLikesCount();
+            }
+        };
+        final ResourceVersions versions = new ResourceVersions();
+        final FilmSearchIndex index = new FilmSearchIndex(filmStorage, versions);
+        final Film hedgehog = index(index, filmStorage, "Ёжик и туман", "Мультфильм");
+        final Film fog = index(index, filmStorage, "Туман", "Мультфильм");
+
+        assertEquals(List.of(hedgehog.getId(), fog.getId()), index.search("туман", true, true, 10, null));
+        assertEquals(List.of(hedgehog.getId(), fog.getId()), index.search("туман", true, true, 10, null));
+        assertEquals(1, reads.get());
+
+        filmStorage.addLike(fog.getId(), 1);
+        versions.filmChanged(fog.getId());
+
+        assertEquals(List.of(fog.getId(), hedgehog.getId()), index.search("туман", true, true, 10, null));
+        assertEquals(2, reads.get());
+    }
+
+    private List<Long> search(FilmSearchIndex index, String query, boolean byTitle, boolean byDescription) {
+        return index.search(query, byTitle, byDescription, 10, popularityIndex);
+    }
+
+    private static Film index(FilmSearchIndex index, InMemoryFilmStorage filmStorage, String name, String description) {
+        final Film film = filmStorage.create(new Film(0, name, description, LocalDate.of(1975, 1, 1), 10,
+                new MPARating(1, null), List.of()));
+        index.put(film);
+        return film;
+    }
+}
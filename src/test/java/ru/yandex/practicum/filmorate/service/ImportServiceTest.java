@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportReport;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class ImportServiceTest {
+    private static final String NDJSON = String.join("\n",
+            "{\"type\":\"user\",\"user\":{\"id\":10,\"email\":\"alice@mail.ru\",\"login\":\"alice\","
+                    + "\"name\":\"Alice\",\"birthday\":\"1990-01-01\"}}",
+            "{\"type\":\"user\",\"user\":{\"id\":11,\"email\":\"bob@mail.ru\",\"login\":\"bob\","
+                    + "\"birthday\":\"1991-01-01\"}}",
+            "",
+            "{\"type\":\"film\",\"film\":{\"id\":20,\"name\":\"Матрица\",\"description\":\"Фантастика\","
+                    + "\"releaseDate\":\"1999-03-31\",\"duration\":136,\"mpa\":{\"id\":4},\"genres\":[{\"id\":1}]}}",
+            "{\"type\":\"like\",\"filmId\":20,\"userId\":10}",
+            "{\"type\":\"like\",\"filmId\":20,\"userId\":11}",
+            "{\"type\":\"friend\",\"userId\":10,\"friendId\":11}",
+            "не json",
+            "{\"type\":\"review\"}",
+            "{\"type\":\"like\",\"filmId\":0,\"userId\":10}",
+            "{\"type\":\"like\",\"filmId\":999,\"userId\":10}");
+
+    @Autowired
+    private ImportService importService;
+    @Autowired
+    private FilmService filmService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private FilmStorage filmStorage;
+
+    @BeforeEach
+    void setUp() {
+        TestData.clear(filmService, userService);
+    }
+
+    //Ошибки разбора не попадают в пачку, а ошибка БД переводит пачку на запись по одной строке:
+    //в отчёте остаются только ошибочные строки, остальные загружены
+    @Test
+    void reportsErrorsByLineAndKeepsValidRows() throws IOException {
+        final ImportReport report = importNdjson(null);
+
+        assertEquals(10, report.getLines());
+        assertEquals(6, report.getImported());
+        assertEquals(4, report.getFailed());
+        assertEquals(List.of(8L, 9L, 10L, 11L), errorLines(report));
+        assertEquals("Неизвестный тип записи: review", report.getErrors().get(1).getMessage());
+        assertEquals(2, filmStorage.findLikesCount().get(20L));
+    }
+
+    //После импорта id продолжаются за импортированными, LIKES_COUNT пересчитан, индексы перечитаны
+    @Test
+    void finishRestartsIdentitiesAndRebuildsIndexes() throws Exception {
+        importNdjson(2);
+
+        final User user = userService.create(new User(0, "carol@mail.ru", "carol", "Carol",
+                LocalDate.of(1992, 1, 1)));
+        final Film film = filmService.create(new Film(0, "Другой фильм", "Описание", LocalDate.of(2000, 1, 1),
+                100, new MPARating(1, null), List.of()));
+
+        assertEquals(12, user.getId());
+        assertEquals(21, film.getId());
+        assertEquals(20, filmService.getPopularFilms(1, null, null).get(0).getId());
+        assertEquals(20, filmService.getPopularFilms(1, 1, 1999).get(0).getId());
+        assertEquals(20, filmService.search("матрица", "title", 10).get(0).getId());
+        assertEquals(11, userService.getFriends(10L).get(0).getId());
+    }
+
+    private ImportReport importNdjson(Integer batchSize) throws IOException {
+        return importService.importNdjson(new ByteArrayInputStream(NDJSON.getBytes(StandardCharsets.UTF_8)),
+                batchSize);
+    }
+
+    private static List<Long> errorLines(ImportReport report) {
+        final List<Long> lines = new ArrayList<>();
+        report.getErrors().forEach(error -> lines.add(error.getLine()));
+        return lines;
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LikeWriteBehindQueueTest {
+    private InMemoryFilmStorage filmStorage;
+    private RecommendationEngine recommendationEngine;
+
+    @BeforeEach
+    void setUp() {
+        filmStorage = new InMemoryFilmStorage();
+        for (int i = 0; i < 3; i++) {
+            filmStorage.create(new Film(0, "Фильм " + i, "Описание", LocalDate.of(2000, 1, 1), 100,
+                    new MPARating(1, null), List.of()));
+        }
+        recommendationEngine = new RecommendationEngine(filmStorage, 20);
+    }
+
+    @Test
+    void likeAndUnlikeCancelOut() {
+        final LikeWriteBehindQueue queue = new LikeWriteBehindQueue(filmStorage, recommendationEngine, 100, 10);
+
+        assertTrue(offer(queue, 1, 1, true));
+        assertFalse(offer(queue, 1, 1, true));
+        assertTrue(offer(queue, 1, 1, false));
+        assertEquals(0, queue.size());
+
+        assertTrue(offer(queue, 1, 1, true));
+        assertTrue(offer(queue, 2, 1, true));
+        assertEquals(2, queue.size());
+        queue.flush();
+        assertEquals(0, queue.size());
+        assertEquals(Map.of(1L, 1L, 2L, 1L, 3L, 0L), filmStorage.findLikesCount());
+
+        //Отмена уже записанного лайка идёт в БД, а не схлопывается
+        assertTrue(offer(queue, 1, 1, false));
+        assertEquals(1, queue.size());
+        queue.shutdown();
+        assertEquals(Map.of(1L, 0L, 2L, 1L, 3L, 0L), filmStorage.findLikesCount());
+    }
+
+    @Test
+    void fullQueueIsFlushedByCaller() {
+        final LikeWriteBehindQueue queue = new LikeWriteBehindQueue(filmStorage, recommendationEngine, 2, 1);
+
+        for (long user = 1; user <= 5; user++) {
+            assertTrue(offer(queue, 3, user, true));
+            assertTrue(queue.size() <= 2);
+        }
+        assertEquals(5L, filmStorage.findLikesCount().get(3L) + queue.size());
+        queue.flush();
+        assertEquals(5L, filmStorage.findLikesCount().get(3L));
+    }
+
+    //Пачка не записывается из-за удалённого фильма: остальные лайки пишутся по одному, а лайк удалённого
+    //фильма откатывается из индексов, только если удаление его там не убрало
+    @Test
+    void droppedLikesAreRevertedFromIndexes() throws ObjectNotFoundException {
+        final InMemoryFilmStorage storage = new InMemoryFilmStorage() {
+            @Override
+            public void applyLikes(List<Like> added, List<Like> deleted) {
+                for (Like like : added) {
+                    if (findByIds(List.of(like.getFilmId())).isEmpty()) {
+                        throw new DataIntegrityViolationException("Фильм " + like.getFilmId() + " удалён");
+                    }
+                }
+                super.applyLikes(added, deleted);
+            }
+        };
+        for (int i = 0; i < 3; i++) {
+            storage.create(new Film(0, "Фильм " + i, "Описание", LocalDate.of(2000, 1, 1), 100,
+                    new MPARating(1, null), List.of()));
+        }
+        recommendationEngine = new RecommendationEngine(storage, 20);
+        final LikeWriteBehindQueue queue = new LikeWriteBehindQueue(storage, recommendationEngine, 100, 10);
+        final AtomicInteger reverted = new AtomicInteger();
+        for (long filmId = 1; filmId <= 3; filmId++) {
+            final long id = filmId;
+            queue.offer(id, 1, true, () -> recommendationEngine.addLike(1, id), () -> {
+                recommendationEngine.deleteLike(1, id);
+                reverted.incrementAndGet();
+            });
+        }
+        //Фильм 2 удалён через сервис и убран из индексов, фильм 3 - лайк пришёл уже после удаления
+        storage.delete(2);
+        recommendationEngine.removeFilm(2);
+        storage.delete(3);
+
+        queue.flush();
+
+        assertEquals(Map.of(1L, 1L), storage.findLikesCount());
+        assertEquals(1, reverted.get());
+        assertTrue(recommendationEngine.isLiked(1, 1));
+        assertFalse(recommendationEngine.isLiked(1, 3));
+    }
+
+    private boolean offer(LikeWriteBehindQueue queue, long filmId, long userId, boolean like) {
+        return queue.offer(filmId, userId, like, () -> {
+            if (like) {
+                recommendationEngine.addLike(userId, filmId);
+            } else {
+                recommendationEngine.deleteLike(userId, filmId);
+            }
+        });
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPARating;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PopularFeedCacheTest {
+    private final ResourceVersions versions = new ResourceVersions();
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private FilmService filmService;
+    private PopularFeedCache cache;
+
+    @BeforeEach
+    void setUp() {
+        filmService = mock(FilmService.class);
+        when(filmService.getPopularFilms(10, null, null)).thenReturn(List.of(film(1, "Первый")));
+        when(filmService.getPopularFilms(10, 1, null)).thenReturn(List.of(film(2, "Комедия")));
+        cache = new PopularFeedCache(filmService, new ObjectMapper().findAndRegisterModules(), versions,
+                registry, 16);
+    }
+
+    //Повторный запрос с тем же count, genreId и year отдаёт тот же ответ без обращения к сервису
+    @Test
+    void sameKeyIsServedFromCache() {
+        final PopularFeedCache.Feed first = cache.get(10, null, null);
+        final PopularFeedCache.Feed genre = cache.get(10, 1, null);
+
+        assertSame(first, cache.get(10, null, null));
+        assertNotEquals(new String(first.getBody()), new String(genre.getBody()));
+        assertEquals(versions.popularTag(), first.getETag());
+        verify(filmService, times(1)).getPopularFilms(10, null, null);
+        verify(filmService, times(1)).getPopularFilms(10, 1, null);
+        assertEquals(1, gets("hit"));
+        assertEquals(2, gets("miss"));
+    }
+
+    //Лайк или изменение фильма меняет версию рейтинга, и ответ собирается заново с новым ETag
+    @Test
+    void newVersionRebuildsFeed() {
+        final PopularFeedCache.Feed stale = cache.get(10, null, null);
+        when(filmService.getPopularFilms(10, null, null)).thenReturn(List.of(film(1, "Первый"), film(2, "Второй")));
+
+        versions.filmChanged(2);
+        final PopularFeedCache.Feed rebuilt = cache.get(10, null, null);
+
+        assertNotEquals(stale.getETag(), rebuilt.getETag());
+        assertEquals(versions.popularTag(), rebuilt.getETag());
+        assertNotEquals(new String(stale.getBody()), new String(rebuilt.getBody()));
+        verify(filmService, times(2)).getPopularFilms(10, null, null);
+    }
+
+    private double gets(String result) {
+        return registry.get("cache.gets").tag("cache", "popular-feed").tag("result", result)
+                .functionCounter().count();
+    }
+
+    private static Film film(long id, String name) {
+        return new Film(id, name, "Описание", LocalDate.of(2000, 1, 1), 100, new MPARating(1, null), List.of());
+    }
+}
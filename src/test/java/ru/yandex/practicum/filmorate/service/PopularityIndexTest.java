@@ -0,0 +1,222 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PopularityIndexTest {
+    private static final int FILMS_COUNT = 5;
+
+    private CountingFilmStorage filmStorage;
+    private PopularityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        filmStorage = new CountingFilmStorage();
+        //Фильмы 1, 3, 5 - комедии 2000 года, 2 и 4 - драмы 2001 года
+        for (int i = 0; i < FILMS_COUNT; i++) {
+            filmStorage.create(new Film(0, "Фильм " + i, "Описание", LocalDate.of(2000 + i % 2, 1, 1), 100,
+                    new MPARating(1, null), List.of(new Genre(1 + i % 2, null))));
+        }
+        filmStorage.addLike(3, 1);
+        filmStorage.addLike(3, 2);
+        filmStorage.addLike(5, 1);
+        index = new PopularityIndex(filmStorage);
+        index.warmUp();
+    }
+
+    @Test
+    void topFollowsLikes() {
+        assertEquals(List.of(3L, 5L, 1L, 2L, 4L), index.getTop(FILMS_COUNT));
+
+        index.addLike(4);
+        index.addLike(4);
+        index.addLike(4);
+        index.deleteLike(3);
+
+        assertEquals(List.of(4L, 3L, 5L), index.getTop(3));
+        assertEquals(3, index.getLikes(4));
+    }
+
+    //Удаление пользователя меняет только лайкнутые им фильмы и не читает хранилище
+    @Test
+    void removeLikesDoesNotRebuild() {
+        final int scans = filmStorage.scans.get();
+
+        index.removeLikes(List.of(3L, 5L));
+
+        assertEquals(scans, filmStorage.scans.get());
+        assertEquals(1, index.getLikes(3));
+        assertEquals(0, index.getLikes(5));
+        assertEquals(List.of(3L, 1L, 2L, 4L, 5L), index.getTop(FILMS_COUNT));
+    }
+
+    //Рейтинги жанров и годов меняются вместе с общим, удаление пользователей не читает хранилище
+    @Test
+    void genreAndYearRankingsFollowUserDeletes() {
+        final int scans = filmStorage.scans.get();
+        assertEquals(List.of(3L, 5L, 1L), index.getTop(FILMS_COUNT, 1, null));
+        assertEquals(List.of(2L, 4L), index.getTop(FILMS_COUNT, 2, 2001));
+
+        index.addLike(4);
+        index.removeLikes(List.of(3L));
+
+        assertEquals(List.of(3L, 5L, 1L), index.getTop(FILMS_COUNT, null, 2000));
+        assertEquals(List.of(4L, 2L), index.getTop(FILMS_COUNT, 2, null));
+
+        index.clearLikes();
+
+        assertEquals(List.of(1L, 3L, 5L), index.getTop(FILMS_COUNT, 1, 2000));
+        assertEquals(List.of(2L, 4L), index.getTop(FILMS_COUNT, null, 2001));
+        assertEquals(0, index.getLikes(3));
+        assertEquals(scans, filmStorage.scans.get());
+    }
+
+    //Пока идёт перестройка, читается старый рейтинг, а пришедший за это время лайк не теряется
+    @Test
+    void rebuildKeepsServingAndReplaysChanges() throws InterruptedException {
+        final CountDownLatch scanning = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        filmStorage.onStream = () -> {
+            scanning.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final Thread rebuild = new Thread(index::warmUp);
+        rebuild.start();
+        scanning.await();
+
+        assertEquals(List.of(3L, 5L, 1L, 2L, 4L), index.getTop(FILMS_COUNT));
+        for (long userId = 1; userId <= 3; userId++) {
+            filmStorage.addLike(2, userId);
+            index.addLike(2);
+        }
+
+        release.countDown();
+        rebuild.join();
+
+        assertEquals(List.of(2L, 3L), index.getTop(2));
+        assertEquals(3, index.getLikes(2));
+    }
+
+    //Лайк, который попал в прочитанные счётчики, но учитывается рейтингом уже во время перестройки,
+    //не считается дважды
+    @Test
+    void likeAppliedDuringRebuildIsCountedOnce() {
+        filmStorage.onCount = () -> filmStorage.addLike(2, 1);
+        filmStorage.onStream = () -> index.addLike(2);
+
+        index.warmUp();
+
+        assertEquals(1, index.getLikes(2));
+    }
+
+    //После исправления счётчиков в хранилище рейтинг перечитывает их, не обходя фильмы
+    @Test
+    void syncLikesReadsCorrectedCounts() {
+        final int scans = filmStorage.scans.get();
+        filmStorage.addLike(4, 1);
+        filmStorage.addLike(4, 2);
+        filmStorage.addLike(4, 3);
+
+        index.syncLikes();
+
+        assertEquals(3, index.getLikes(4));
+        assertEquals(List.of(4L, 3L, 5L), index.getTop(3));
+        assertEquals(List.of(4L, 2L), index.getTop(FILMS_COUNT, 2, null));
+        assertEquals(scans, filmStorage.scans.get());
+    }
+
+    //Второй запрос топа отдаёт фильмы из памяти
+    @Test
+    void topFilmsAreServedFromMemory() {
+        assertEquals(List.of(3L, 5L), ids(index.getTopFilms(2, null, null)));
+        final int reads = filmStorage.reads.get();
+
+        assertEquals(List.of(3L, 5L), ids(index.getTopFilms(2, null, null)));
+        assertEquals(reads, filmStorage.reads.get());
+
+        final Film renamed = new Film(5, "Новое название", "Описание", LocalDate.of(2000, 1, 1), 100,
+                new MPARating(1, null), List.of());
+        index.updateFilm(renamed);
+        filmStorage.save(renamed);
+
+        assertEquals("Новое название", index.getTopFilms(2, null, null).get(1).getName());
+    }
+
+    //Перестановка при лайке не даёт обходу рейтинга пропустить или повторить фильм
+    @Test
+    void concurrentLikesNeverHideFilms() throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final Thread writer = new Thread(() -> {
+            while (running.get()) {
+                index.addLike(1);
+                index.deleteLike(1);
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 20_000; i++) {
+                final List<Long> top = index.getTop(FILMS_COUNT);
+                assertEquals(FILMS_COUNT, top.size());
+                assertEquals(FILMS_COUNT, new HashSet<>(top).size());
+                final List<Long> odd = index.getTop(FILMS_COUNT, filmId -> filmId % 2 == 1);
+                assertEquals(3, odd.size());
+                assertEquals(3, new HashSet<>(odd).size());
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+
+    private static List<Long> ids(List<Film> films) {
+        final List<Long> ids = new ArrayList<>();
+        films.forEach(film -> ids.add(film.getId()));
+        return ids;
+    }
+
+    private static final class CountingFilmStorage extends InMemoryFilmStorage {
+        private final AtomicInteger scans = new AtomicInteger();
+        private final AtomicInteger reads = new AtomicInteger();
+        private volatile Runnable onStream = () -> { };
+        private volatile Runnable onCount = () -> { };
+
+        @Override
+        public Map<Long, Long> findLikesCount() {
+            onCount.run();
+            return super.findLikesCount();
+        }
+
+        @Override
+        public void streamAll(Consumer<Film> consumer) {
+            scans.incrementAndGet();
+            onStream.run();
+            super.streamAll(consumer);
+        }
+
+        @Override
+        public List<Film> findByIds(List<Long> ids) {
+            reads.incrementAndGet();
+            return super.findByIds(ids);
+        }
+    }
+}
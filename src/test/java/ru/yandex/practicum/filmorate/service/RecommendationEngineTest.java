@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecommendationEngineTest {
+
+    @Test
+    void recommendsFilmsOfSimilarUsers() {
+        final RecommendationEngine engine = new RecommendationEngine(new InMemoryFilmStorage(), 2);
+        //1 лайкнул 1, 2, 3; 2 похож на него сильнее всех, 3 слабее, 4 не похож совсем
+        like(engine, 1, 1, 2, 3);
+        like(engine, 2, 1, 2, 3, 4, 5);
+        like(engine, 3, 1, 5, 6);
+        like(engine, 4, 7);
+
+        assertEquals(List.of(5L, 4L, 6L), engine.recommend(1, 10));
+        assertEquals(List.of(5L), engine.recommend(1, 1));
+        assertEquals(List.of(), engine.recommend(5, 10));
+
+        engine.deleteLike(2, 5);
+        engine.addLike(1, 6);
+        assertEquals(List.of(4L, 5L), engine.recommend(1, 10));
+
+        engine.removeFilm(4);
+        engine.removeUser(3);
+        assertEquals(List.of(), engine.recommend(1, 10));
+    }
+
+    //Запоздавший лайк удалённого пользователя не возвращает его строку
+    @Test
+    void likeAfterRemoveUserIsIgnored() {
+        final RecommendationEngine engine = new RecommendationEngine(new InMemoryFilmStorage(), 2);
+        like(engine, 1, 1, 2);
+        like(engine, 2, 1, 2, 3);
+
+        engine.removeUser(2);
+        engine.addLike(2, 4);
+
+        assertFalse(engine.isLiked(2, 4));
+        assertEquals(List.of(), engine.recommend(1, 10));
+    }
+
+    //Пока матрица собирается заново, рекомендации считаются по прежней, а пришедший лайк не теряется
+    @Test
+    void rebuildKeepsServingAndReplaysChanges() {
+        final AtomicReference<RecommendationEngine> engine = new AtomicReference<>();
+        final List<Long> duringRebuild = new ArrayList<>();
+        final InMemoryFilmStorage storage = new InMemoryFilmStorage() {
+            @Override
+            public void forEachLike(Consumer<Like> consumer) {
+                duringRebuild.addAll(engine.get().recommend(1, 10));
+                engine.get().addLike(1, 3);
+                consumer.accept(new Like(2, 2));
+            }
+        };
+        engine.set(new RecommendationEngine(storage, 2));
+        like(engine.get(), 1, 1);
+        like(engine.get(), 2, 1, 2);
+
+        engine.get().warmUp();
+
+        assertEquals(List.of(2L), duringRebuild);
+        assertTrue(engine.get().isLiked(1, 3));
+        assertFalse(engine.get().isLiked(2, 1));
+        assertTrue(engine.get().isLiked(2, 2));
+    }
+
+    @Test
+    void parallelSimilarityMatchesNaiveCount() {
+        final int users = RecommendationEngine.PARALLEL_THRESHOLD * 2;
+        final int neighbours = 20;
+        final RecommendationEngine engine = new RecommendationEngine(new InMemoryFilmStorage(), neighbours);
+        final Map<Long, Set<Long>> likes = new HashMap<>();
+        for (long user = 1; user <= users; user++) {
+            for (long k = 1; k <= 30; k++) {
+                final long film = user * k % 500 + 1;
+                engine.addLike(user, film);
+                likes.computeIfAbsent(user, id -> new HashSet<>()).add(film);
+            }
+        }
+
+        final Set<Long> liked = likes.get(7L);
+        final Map<Long, Long> scores = new HashMap<>();
+        likes.entrySet().stream()
+                .filter(entry -> entry.getKey() != 7L)
+                .map(entry -> Map.entry(entry.getKey(),
+                        entry.getValue().stream().filter(liked::contains).count()))
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(neighbours)
+                .forEach(neighbour -> likes.get(neighbour.getKey()).stream()
+                        .filter(film -> !liked.contains(film))
+                        .forEach(film -> scores.merge(film, neighbour.getValue(), Long::sum)));
+        final List<Long> expected = scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(50)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+
+        assertEquals(expected, engine.recommend(7, 50));
+    }
+
+    private static void like(RecommendationEngine engine, long userId, long... filmIds) {
+        for (long filmId : filmIds) {
+            engine.addLike(userId, filmId);
+        }
+    }
+}
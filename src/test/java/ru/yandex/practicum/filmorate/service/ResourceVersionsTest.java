@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ResourceVersionsTest {
+    private final ResourceVersions versions = new ResourceVersions();
+
+    @Test
+    void writesChangeOnlyAffectedTags() {
+        final String film = versions.filmTag(1);
+        final String otherFilm = versions.filmTag(2);
+        final String popular = versions.popularTag();
+        final String friends = versions.friendsTag(1);
+
+        versions.filmChanged(1);
+
+        assertNotEquals(film, versions.filmTag(1));
+        assertNotEquals(popular, versions.popularTag());
+        assertEquals(otherFilm, versions.filmTag(2));
+        assertEquals(friends, versions.friendsTag(1));
+
+        final String user = versions.userTag(3);
+        versions.friendsChanged(1, 2);
+
+        assertNotEquals(friends, versions.friendsTag(1));
+        assertEquals(user, versions.userTag(3));
+        final String friendsOfThird = versions.friendsTag(3);
+
+        //Переименование любого пользователя меняет все списки друзей
+        versions.userChanged(4);
+
+        assertNotEquals(friendsOfThird, versions.friendsTag(3));
+    }
+
+    @Test
+    void resetChangesEveryTag() {
+        versions.filmChanged(1);
+        final String changed = versions.filmTag(1);
+        final String untouched = versions.filmTag(2);
+
+        versions.reset();
+
+        assertNotEquals(changed, versions.filmTag(1));
+        assertNotEquals(untouched, versions.filmTag(2));
+        assertEquals(versions.filmTag(1), versions.filmTag(2));
+    }
+}
@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class CachedFilmStorageTest {
+    private CountingFilmStorage filmStorage;
+    private CachedFilmStorage cachedStorage;
+
+    @BeforeEach
+    void setUp() {
+        filmStorage = new CountingFilmStorage();
+        filmStorage.create(film(0, "Фильм"));
+        filmStorage.create(film(0, "Другой фильм"));
+        cachedStorage = new CachedFilmStorage(filmStorage, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void secondReadIsServedFromCache() throws ObjectNotFoundException {
+        cachedStorage.findById(1);
+        cachedStorage.findByIds(List.of(1L, 2L));
+        final int reads = filmStorage.reads.get();
+
+        assertEquals("Фильм", cachedStorage.findById(1).getName());
+        assertEquals(List.of("Фильм", "Другой фильм"), names(cachedStorage.findByIds(List.of(1L, 2L))));
+        assertEquals(reads, filmStorage.reads.get());
+        assertEquals(4, cachedStorage.getStatistics().getHits());
+    }
+
+    //Изменение полученного фильма не меняет то, что увидят остальные
+    @Test
+    void callersGetCopies() throws ObjectNotFoundException {
+        final Film first = cachedStorage.findById(1);
+        first.setName("Изменено без записи");
+        first.getGenres().add(new Genre(2, null));
+
+        final Film second = cachedStorage.findById(1);
+        assertNotSame(first, second);
+        assertEquals("Фильм", second.getName());
+        assertEquals(1, second.getGenres().size());
+        assertEquals("Фильм", cachedStorage.findByIds(List.of(1L)).get(0).getName());
+    }
+
+    @Test
+    void writesInvalidateEntries() throws ObjectNotFoundException {
+        cachedStorage.findById(1);
+
+        cachedStorage.put(film(1, "Новое название"));
+
+        assertEquals("Новое название", cachedStorage.findById(1).getName());
+    }
+
+    //Чтение, начатое до записи, не возвращает в кэш старую версию после сброса
+    @Test
+    void loadStartedBeforeWriteIsNotCached() throws Exception {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        filmStorage.onRead = () -> {
+            loaded.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final AtomicReference<Film> stale = new AtomicReference<>();
+        final Thread reader = new Thread(() -> {
+            try {
+                stale.set(cachedStorage.findById(1));
+            } catch (ObjectNotFoundException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        reader.start();
+        loaded.await();
+        filmStorage.onRead = () -> { };
+
+        cachedStorage.put(film(1, "Новое название"));
+        release.countDown();
+        reader.join();
+
+        assertEquals("Фильм", stale.get().getName());
+        assertEquals("Новое название", cachedStorage.findById(1).getName());
+    }
+
+    private static Film film(long id, String name) {
+        return new Film(id, name, "Описание", LocalDate.of(2000, 1, 1), 100,
+                new MPARating(1, null), new ArrayList<>(List.of(new Genre(1, null))));
+    }
+
+    private static List<String> names(List<Film> films) {
+        final List<String> names = new ArrayList<>();
+        films.forEach(film -> names.add(film.getName()));
+        return names;
+    }
+
+    private static final class CountingFilmStorage extends InMemoryFilmStorage {
+        private final AtomicInteger reads = new AtomicInteger();
+        private volatile Runnable onRead = () -> { };
+
+        @Override
+        public Film findById(long id) throws ObjectNotFoundException {
+            reads.incrementAndGet();
+            final Film film = super.findById(id);
+            onRead.run();
+            return film;
+        }
+
+        @Override
+        public List<Film> findByIds(List<Long> ids) {
+            reads.incrementAndGet();
+            return super.findByIds(ids);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.database.InMemoryUserStorage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CachedUserStorageTest {
+    private CachedUserStorage cachedStorage;
+
+    @BeforeEach
+    void setUp() {
+        final InMemoryUserStorage userStorage = new InMemoryUserStorage(new InMemoryFilmStorage());
+        userStorage.create(user(0, "user"));
+        cachedStorage = new CachedUserStorage(userStorage, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void callersGetCopies() throws ObjectNotFoundException {
+        cachedStorage.findById(1).setName("Изменено без записи");
+
+        assertEquals("user", cachedStorage.findById(1).getName());
+        assertEquals(1, cachedStorage.getStatistics().getHits());
+    }
+
+    @Test
+    void writesInvalidateEntries() throws ObjectNotFoundException {
+        cachedStorage.findById(1);
+
+        cachedStorage.put(user(1, "renamed"));
+        assertEquals("renamed", cachedStorage.findById(1).getName());
+
+        cachedStorage.delete(1);
+        assertThrows(ObjectNotFoundException.class, () -> cachedStorage.findById(1));
+    }
+
+    private static User user(long id, String name) {
+        return new User(id, name + "@mail.ru", name, name, LocalDate.of(2000, 1, 1));
+    }
+}
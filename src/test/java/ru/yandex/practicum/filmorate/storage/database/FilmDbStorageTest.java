@@ -0,0 +1,249 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.PopularityIndex;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest
+class FilmDbStorageTest {
+    private static final int FILMS_COUNT = 50;
+
+    @Autowired
+    private DataSource dataSource;
+    private StatementCountingDataSource countingDataSource;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        countingDataSource = new StatementCountingDataSource(dataSource);
+        filmStorage = new FilmDbStorage(new JdbcTemplate(countingDataSource),
+                new ReferenceDataDictionary(new JdbcTemplate(dataSource)));
+        userStorage = new UserDbStorage(new JdbcTemplate(countingDataSource),
+                new FriendshipGraph(new JdbcTemplate(dataSource)));
+        filmStorage.deleteAll();
+        userStorage.deleteAll();
+        for (int i = 0; i < FILMS_COUNT; i++) {
+            filmStorage.create(Film.builder()
+                    .name("Фильм " + i)
+                    .description("Описание " + i)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(100)
+                    .mpa(new MPARating(1, null))
+                    .genres(List.of(new Genre(1, null), new Genre(2, null)))
+                    .build());
+        }
+        countingDataSource.reset();
+    }
+
+    @Test
+    void findAllLoadsGenresWithSingleQuery() {
+        List<Film> films = filmStorage.findAll();
+
+        assertEquals(FILMS_COUNT, films.size());
+        films.forEach(film -> assertEquals(2, film.getGenres().size()));
+        assertEquals(1, countingDataSource.getStatements());
+    }
+
+    @Test
+    void getPopularFilmsLoadsGenresWithSingleQuery() {
+        List<Film> films = filmStorage.getPopularFilms(FILMS_COUNT);
+
+        assertEquals(FILMS_COUNT, films.size());
+        films.forEach(film -> assertEquals(2, film.getGenres().size()));
+        assertEquals(1, countingDataSource.getStatements());
+    }
+
+    @Test
+    void findByIdLoadsGenresWithSingleQuery() throws ObjectNotFoundException {
+        final long id = filmStorage.findPage(0, 1).get(0).getId();
+        countingDataSource.reset();
+
+        Film film = filmStorage.findById(id);
+
+        assertEquals(List.of(1, 2), film.getGenres().stream().map(Genre::getId).collect(Collectors.toList()));
+        assertEquals("G", film.getMpa().getName());
+        assertEquals(1, countingDataSource.getStatements());
+    }
+
+    //Потоковый запрос идёт в ленивом режиме H2, а соединение возвращается в пул в обычном
+    @Test
+    void streamAllRunsLazilyAndRestoresConnection() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            final SessionLocal session = (SessionLocal) connection.unwrap(JdbcConnection.class).getSession();
+            final FilmDbStorage storage = new FilmDbStorage(
+                    new JdbcTemplate(new SingleConnectionDataSource(connection, true)),
+                    new ReferenceDataDictionary(new JdbcTemplate(dataSource)));
+            final List<Film> films = new ArrayList<>();
+            final List<Boolean> lazy = new ArrayList<>();
+
+            storage.streamAll(film -> {
+                films.add(film);
+                lazy.add(session.isLazyQueryExecution());
+            });
+
+            assertEquals(FILMS_COUNT, films.size());
+            films.forEach(film -> assertEquals(List.of(1, 2),
+                    film.getGenres().stream().map(Genre::getId).collect(Collectors.toList())));
+            assertEquals(List.of(true), lazy.stream().distinct().collect(Collectors.toList()));
+            assertFalse(session.isLazyQueryExecution());
+        }
+    }
+
+    @Test
+    void getPopularFilmsUsesLikesCount() {
+        List<Film> films = filmStorage.findAll();
+        Film first = films.get(10);
+        Film second = films.get(20);
+        User user = userStorage.create(TestData.user("user"));
+        User other = userStorage.create(TestData.user("other"));
+        filmStorage.addLike(first.getId(), user.getId());
+        filmStorage.addLike(first.getId(), other.getId());
+        filmStorage.addLike(second.getId(), user.getId());
+
+        List<Film> popular = filmStorage.getPopularFilms(2);
+
+        assertEquals(first.getId(), popular.get(0).getId());
+        assertEquals(second.getId(), popular.get(1).getId());
+
+        filmStorage.deleteLike(first.getId(), user.getId());
+        filmStorage.deleteLike(first.getId(), other.getId());
+
+        assertEquals(second.getId(), filmStorage.getPopularFilms(1).get(0).getId());
+    }
+
+    @Test
+    void popularByGenreAndYearMatchesIndex() throws ObjectNotFoundException {
+        List<Film> films = filmStorage.findAll();
+        User user = userStorage.create(TestData.user("user"));
+        User other = userStorage.create(TestData.user("other"));
+        for (int i = 0; i < 10; i++) {
+            Film film = films.get(i);
+            film.setReleaseDate(LocalDate.of(2000 + i % 2, 6, 1));
+            film.setGenres(List.of(new Genre(1 + i % 3, null)));
+            filmStorage.put(film);
+            filmStorage.addLike(film.getId(), user.getId());
+            if (i % 4 == 0) {
+                filmStorage.addLike(film.getId(), other.getId());
+            }
+        }
+        PopularityIndex index = new PopularityIndex(filmStorage);
+        index.warmUp();
+
+        assertEquals(List.of(films.get(0).getId(), films.get(4).getId(), films.get(8).getId()),
+                ids(filmStorage.getPopularFilms(3, null, 2000)));
+        assertEquals(List.of(films.get(1).getId(), films.get(7).getId()),
+                ids(filmStorage.getPopularFilms(10, 2, 2001)));
+        for (Integer genreId : new Integer[]{null, 1, 2, 3, 6}) {
+            for (Integer year : new Integer[]{null, 2000, 2001, 1999}) {
+                assertEquals(ids(filmStorage.getPopularFilms(FILMS_COUNT, genreId, year)),
+                        index.getTop(FILMS_COUNT, genreId, year));
+            }
+        }
+
+        //Фильм переезжает в рейтинг другого года и жанра
+        Film moved = films.get(4);
+        moved.setReleaseDate(LocalDate.of(1999, 1, 1));
+        moved.setGenres(List.of(new Genre(6, null)));
+        filmStorage.put(moved);
+        index.updateFilm(moved);
+        assertEquals(List.of(moved.getId()), index.getTop(FILMS_COUNT, 6, 1999));
+        assertEquals(ids(filmStorage.getPopularFilms(FILMS_COUNT, 2, null)), index.getTop(FILMS_COUNT, 2, null));
+    }
+
+    @Test
+    void applyLikesWritesBatchAndCounts() {
+        List<Film> films = filmStorage.findAll();
+        User user = userStorage.create(TestData.user("user"));
+        User other = userStorage.create(TestData.user("other"));
+        filmStorage.addLike(films.get(0).getId(), user.getId());
+        countingDataSource.reset();
+
+        filmStorage.applyLikes(List.of(new Like(films.get(0).getId(), user.getId()),
+                        new Like(films.get(0).getId(), other.getId()), new Like(films.get(1).getId(), other.getId())),
+                List.of(new Like(films.get(2).getId(), user.getId())));
+
+        //по пачке на вставку, удаление и пересчёт счётчиков
+        assertEquals(3, countingDataSource.getStatements());
+        assertEquals(List.of(films.get(0).getId(), films.get(1).getId()), ids(filmStorage.getPopularFilms(2)));
+        assertEquals(0, filmStorage.reconcileLikesCount());
+    }
+
+    @Test
+    void reconcileLikesCountRepairsDrift() {
+        Film film = filmStorage.findAll().get(0);
+        User user = userStorage.create(TestData.user("user"));
+        filmStorage.addLike(film.getId(), user.getId());
+        new JdbcTemplate(dataSource).update("update FILMS set LIKES_COUNT = 42 where FILM_ID = ?", film.getId());
+
+        assertEquals(1, filmStorage.reconcileLikesCount());
+        assertEquals(0, filmStorage.reconcileLikesCount());
+    }
+
+    @Test
+    void createWritesGenresInOneBatch() {
+        countingDataSource.reset();
+        for (int i = 0; i < FILMS_COUNT; i++) {
+            filmStorage.create(Film.builder()
+                    .name("Импорт " + i)
+                    .description("Описание " + i)
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(100)
+                    .mpa(new MPARating(1, null))
+                    .genres(List.of(new Genre(3, null), new Genre(1, null), new Genre(2, null), new Genre(1, null)))
+                    .build());
+        }
+
+        //фильм и пачка жанров вместо фильма и отдельного insert на каждый жанр
+        assertEquals(2 * FILMS_COUNT, countingDataSource.getStatements());
+        Film film = filmStorage.findAll().get(FILMS_COUNT);
+        assertEquals(List.of(1, 2, 3), film.getGenres().stream().map(Genre::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void putTouchesOnlyChangedGenres() throws ObjectNotFoundException {
+        Film film = filmStorage.findAll().get(0);
+        countingDataSource.reset();
+
+        filmStorage.put(film);
+
+        //обновление фильма и чтение текущих жанров, без записи в FILM_GENRES
+        assertEquals(2, countingDataSource.getStatements());
+
+        film.setGenres(List.of(new Genre(2, null), new Genre(4, null), new Genre(5, null)));
+        countingDataSource.reset();
+        filmStorage.put(film);
+
+        assertEquals(4, countingDataSource.getStatements());
+        assertEquals(List.of(2, 4, 5), filmStorage.findById(film.getId()).getGenres().stream()
+                .map(Genre::getId).collect(Collectors.toList()));
+    }
+
+    private static List<Long> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.TestData;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.MutualFriends;
+import ru.yandex.practicum.filmorate.model.User;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+class FriendshipGraphTest {
+    private static final int USERS_COUNT = 10;
+
+    @Autowired
+    private DataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private FriendshipGraph graph;
+    private UserDbStorage userStorage;
+    private long firstId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        graph = new FriendshipGraph(jdbcTemplate);
+        userStorage = new UserDbStorage(jdbcTemplate, graph);
+        userStorage.deleteAll();
+        for (int i = 0; i < USERS_COUNT; i++) {
+            final User user = userStorage.create(TestData.user("user" + i));
+            if (i == 0) {
+                firstId = user.getId();
+            }
+        }
+    }
+
+    @Test
+    void graphFollowsFriendsTable() throws ObjectNotFoundException {
+        for (long i = 1; i < USERS_COUNT; i++) {
+            userStorage.addFriend(firstId, firstId + i);
+            if (i > 1) {
+                userStorage.addFriend(firstId + 1, firstId + i);
+            }
+        }
+        userStorage.addFriend(firstId + 2, firstId);
+        userStorage.deleteFriend(firstId, firstId + 3);
+        userStorage.delete(firstId + 4);
+
+        assertEquals(friendsFromTable(firstId), ids(userStorage.getFriends(firstId)));
+        assertEquals(friendsFromTable(firstId + 1), ids(userStorage.getFriends(firstId + 1)));
+        assertEquals(friendsFromTable(firstId + 2), ids(userStorage.getFriends(firstId + 2)));
+        assertEquals(List.of(firstId + 2, firstId + 5, firstId + 6, firstId + 7, firstId + 8, firstId + 9),
+                ids(userStorage.getCommonFriends(firstId, firstId + 1)));
+        assertEquals(List.of(firstId + 5, firstId + 6),
+                ids(userStorage.getFriendsPage(firstId, firstId + 2, 2)));
+
+        //Граф, прочитанный из БД заново, совпадает с поддерживаемым по изменениям
+        final FriendshipGraph loaded = new FriendshipGraph(jdbcTemplate);
+        for (long i = 0; i < USERS_COUNT; i++) {
+            assertArrayEquals(graph.getFriends(firstId + i), loaded.getFriends(firstId + i));
+        }
+    }
+
+    @Test
+    void mutualCountsAndSuggestions() {
+        //0 дружит с 1 и 2; 1 и 2 дружат с 3, 4; 2 ещё с 5
+        userStorage.addFriend(firstId, firstId + 1);
+        userStorage.addFriend(firstId, firstId + 2);
+        for (long i = 3; i <= 4; i++) {
+            userStorage.addFriend(firstId + 1, firstId + i);
+            userStorage.addFriend(firstId + 2, firstId + i);
+        }
+        userStorage.addFriend(firstId + 2, firstId + 5);
+        userStorage.addFriend(firstId + 2, firstId);
+
+        assertEquals(List.of(new MutualFriends(firstId + 1, 0), new MutualFriends(firstId + 6, 0)),
+                userStorage.getMutualFriendsCounts(firstId, List.of(firstId + 1, firstId + 6)));
+        assertEquals(List.of(new MutualFriends(firstId + 2, 2)),
+                userStorage.getMutualFriendsCounts(firstId + 1, List.of(firstId + 2)));
+        assertEquals(List.of(new MutualFriends(firstId + 3, 2), new MutualFriends(firstId + 4, 2),
+                        new MutualFriends(firstId + 5, 1)),
+                userStorage.getFriendSuggestions(firstId, 10));
+        assertEquals(List.of(new MutualFriends(firstId + 3, 2)), userStorage.getFriendSuggestions(firstId, 1));
+    }
+
+    @Test
+    void parallelCountingMatchesSequential() {
+        final int users = MutualFriendsCounter.PARALLEL_THRESHOLD * 4;
+        final LongFunction<int[]> friendsOf = id -> IntStream.rangeClosed(1, 50)
+                .map(k -> (int) ((id * k) % users) + 1).filter(friend -> friend != id).distinct().sorted().toArray();
+        final List<Long> others = LongStream.rangeClosed(1, users).boxed().collect(Collectors.toList());
+
+        final List<MutualFriends> parallel = MutualFriendsCounter.count(friendsOf, 7, others);
+        final List<MutualFriends> sequential = new ArrayList<>();
+        for (int from = 0; from < others.size(); from += MutualFriendsCounter.PARALLEL_THRESHOLD - 1) {
+            sequential.addAll(MutualFriendsCounter.count(friendsOf, 7,
+                    others.subList(from, Math.min(from + MutualFriendsCounter.PARALLEL_THRESHOLD - 1, others.size()))));
+        }
+        assertEquals(sequential, parallel);
+    }
+
+    private List<Long> friendsFromTable(long userId) {
+        return jdbcTemplate.queryForList("select FRIEND_ID from FRIENDS where USER_ID = ? AND STATUS = TRUE "
+                + "order by FRIEND_ID", Long.class, userId);
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+}
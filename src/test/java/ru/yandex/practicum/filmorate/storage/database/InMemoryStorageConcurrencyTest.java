@@ -0,0 +1,193 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InMemoryStorageConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int PER_THREAD = 500;
+
+    private final InMemoryFilmStorage filmStorage = new InMemoryFilmStorage();
+    private final InMemoryUserStorage userStorage = new InMemoryUserStorage(filmStorage);
+
+    @Test
+    void concurrentCreatesGetUniqueIds() throws Exception {
+        runConcurrently(thread -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                filmStorage.create(film("Фильм " + thread + "-" + i));
+                userStorage.create(user("user" + thread + "-" + i));
+            }
+        });
+
+        final Set<Long> filmIds = new HashSet<>();
+        filmStorage.findAll().forEach(film -> filmIds.add(film.getId()));
+        final Set<Long> userIds = new HashSet<>();
+        userStorage.findAll().forEach(user -> userIds.add(user.getId()));
+        assertEquals(THREADS * PER_THREAD, filmIds.size());
+        assertEquals(THREADS * PER_THREAD, userIds.size());
+    }
+
+    //Изменение переданного или прочитанного объекта не меняет хранилище
+    @Test
+    void storedObjectsAreCopies() throws Exception {
+        final Film film = filmStorage.create(film("Фильм"));
+        final User user = userStorage.create(user("user"));
+
+        film.setName("Изменено после создания");
+        filmStorage.findById(film.getId()).getGenres().clear();
+        user.setLogin("changed");
+        userStorage.findAll().get(0).setName("Изменено после чтения");
+
+        final Film stored = filmStorage.findById(film.getId());
+        assertEquals("Фильм", stored.getName());
+        assertEquals(2, stored.getGenres().size());
+        assertEquals("user", userStorage.findById(user.getId()).getLogin());
+        assertEquals("user", userStorage.findById(user.getId()).getName());
+    }
+
+    @Test
+    void concurrentLikesKeepPopularFeedConsistent() throws Exception {
+        final int films = 20;
+        for (int i = 0; i < films; i++) {
+            filmStorage.create(film("Фильм " + i));
+        }
+        //Каждый поток ставит лайки от своих пользователей и часть из них снимает
+        runConcurrently(thread -> {
+            for (int i = 0; i < PER_THREAD; i++) {
+                final long filmId = i % films + 1;
+                final long userId = (long) thread * PER_THREAD + i;
+                filmStorage.addLike(filmId, userId);
+                filmStorage.addLike(filmId, userId);
+                if (i % 3 == 0) {
+                    filmStorage.deleteLike(filmId, userId);
+                }
+            }
+        });
+
+        final Map<Long, Long> likes = filmStorage.findLikesCount();
+        long total = 0;
+        for (long count : likes.values()) {
+            total += count;
+        }
+        assertEquals(THREADS * (PER_THREAD - (PER_THREAD + 2) / 3), total);
+
+        final List<Film> popular = filmStorage.getPopularFilms(films);
+        assertEquals(films, popular.size());
+        for (int i = 1; i < popular.size(); i++) {
+            final long previous = likes.get(popular.get(i - 1).getId());
+            final long current = likes.get(popular.get(i).getId());
+            assertTrue(previous > current
+                    || previous == current && popular.get(i - 1).getId() < popular.get(i).getId());
+        }
+    }
+
+    @Test
+    void concurrentFriendsAreNotLost() throws Exception {
+        final int users = THREADS * 10;
+        for (int i = 0; i < users; i++) {
+            userStorage.create(user("user" + i));
+        }
+        runConcurrently(thread -> {
+            for (long userId = thread + 1; userId <= users; userId += THREADS) {
+                for (long friendId = 1; friendId <= users; friendId++) {
+                    if (friendId != userId) {
+                        userStorage.addFriend(userId, friendId);
+                    }
+                }
+            }
+        });
+
+        for (long userId = 1; userId <= users; userId++) {
+            assertEquals(users - 1, userStorage.getFriends(userId).size());
+        }
+        assertEquals(users - 2, userStorage.getCommonFriends(1L, 2L).size());
+    }
+
+    //Удаление пользователя удаляет его лайки, как ON DELETE CASCADE в LIKES
+    @Test
+    void concurrentUserDeletesRemoveTheirLikes() throws Exception {
+        final int films = 20;
+        for (int i = 0; i < films; i++) {
+            filmStorage.create(film("Фильм " + i));
+        }
+        final int users = THREADS * 10;
+        for (int i = 0; i < users; i++) {
+            userStorage.create(user("user" + i));
+        }
+        //Каждый пользователь лайкает все фильмы, затем удаляется каждый второй
+        runConcurrently(thread -> {
+            for (long userId = thread + 1; userId <= users; userId += THREADS) {
+                for (long filmId = 1; filmId <= films; filmId++) {
+                    filmStorage.addLike(filmId, userId);
+                }
+                if (userId % 2 == 0) {
+                    userStorage.delete(userId);
+                }
+            }
+        });
+
+        filmStorage.findLikesCount().values().forEach(count -> assertEquals(users / 2, count));
+        assertEquals("G", filmStorage.findById(1).getMpa().getName());
+        assertEquals("Комедия", filmStorage.findById(1).getGenres().get(0).getName());
+
+        userStorage.deleteAll();
+        filmStorage.findLikesCount().values().forEach(count -> assertEquals(0, count));
+    }
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runConcurrently(Task task) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                task.run(thread);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Void> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+    }
+
+    private static Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Описание")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(new MPARating(1, null))
+                .genres(List.of(new Genre(2, null), new Genre(1, null)))
+                .build();
+    }
+
+    private static User user(String login) {
+        return new User(0, login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1));
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.storage.database;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Считает количество выполненных в БД запросов (созданных Statement), чтобы ловить N+1 в тестах
+class StatementCountingDataSource extends DelegatingDataSource {
+    private final AtomicInteger statements = new AtomicInteger();
+
+    StatementCountingDataSource(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final Connection connection = super.getConnection();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{Connection.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("prepareStatement") || method.getName().equals("createStatement")
+                            || method.getName().equals("prepareCall")) {
+                        statements.incrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    int getStatements() {
+        return statements.get();
+    }
+
+    void reset() {
+        statements.set(0);
+    }
+}
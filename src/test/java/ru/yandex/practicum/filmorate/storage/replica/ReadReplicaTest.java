@@ -0,0 +1,187 @@
+package ru.yandex.practicum.filmorate.storage.replica;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataAccessException;
+import ru.yandex.practicum.filmorate.exceptions.ObjectNotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPARating;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {"filmorate.read-replica.enabled=true", "filmorate.read-replica.max-lag-ms=50",
+        "spring.datasource.url=jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1"})
+class ReadReplicaTest {
+    @Autowired
+    private ReadReplica replica;
+    @Autowired
+    private FilmStorage filmStorage;
+    @Autowired
+    private UserStorage userStorage;
+    @Autowired
+    @Qualifier("filmDbStorage")
+    private FilmStorage filmDbStorage;
+    @Autowired
+    @Qualifier("userDbStorage")
+    private UserStorage userDbStorage;
+
+    @AfterEach
+    void tearDown() {
+        filmStorage.deleteAll();
+        userStorage.deleteAll();
+    }
+
+    @Test
+    void replicaFollowsWrites() throws ObjectNotFoundException {
+        final User first = userStorage.create(user("first"));
+        final User second = userStorage.create(user("second"));
+        final Film film = filmStorage.create(film("Первый"));
+        final Film other = filmStorage.create(film("Второй"));
+        filmStorage.addLike(film.getId(), first.getId());
+        filmStorage.addLike(film.getId(), second.getId());
+        filmStorage.addLike(other.getId(), second.getId());
+        userStorage.addFriend(first.getId(), second.getId());
+        other.setName("Второй, обновлённый");
+        filmStorage.put(other);
+        userStorage.delete(second.getId());
+
+        //Записи уже воспроизведены: write ждёт воспроизведения
+        assertTrue(replica.isFresh());
+        assertEquals(filmDbStorage.findLikesCount(), replica.films().findLikesCount());
+        assertEquals(ids(filmDbStorage.getPopularFilms(10)), ids(replica.films().getPopularFilms(10)));
+        assertEquals("Второй, обновлённый", replica.films().findById(other.getId()).getName());
+        assertEquals(userDbStorage.findAll(), replica.users().findAll());
+        assertEquals(userDbStorage.getFriends(first.getId()), replica.users().getFriends(first.getId()));
+    }
+
+    //Страницы друзей из памяти совпадают со страницами из БД, неподтверждённые дружбы не попадают в список
+    @Test
+    void friendsPagesMatchDatabase() {
+        final User user = userStorage.create(user("user"));
+        for (int i = 0; i < 4; i++) {
+            final User friend = userStorage.create(user("friend" + i));
+            userStorage.addFriend(user.getId(), friend.getId());
+        }
+        final User follower = userStorage.create(user("follower"));
+        userStorage.addFriend(follower.getId(), user.getId());
+
+        long after = 0;
+        for (int page = 0; page < 3; page++) {
+            final List<User> expected = userDbStorage.getFriendsPage(user.getId(), after, 2);
+            assertEquals(expected, replica.users().getFriendsPage(user.getId(), after, 2));
+            after = expected.isEmpty() ? after : expected.get(expected.size() - 1).getId();
+        }
+        assertEquals(List.of(), replica.users().getFriendsPage(follower.getId() + 1, 0, 2));
+        assertEquals(userDbStorage.getFriendsPage(follower.getId(), 0, 10),
+                replica.users().getFriendsPage(follower.getId(), 0, 10));
+    }
+
+    @Test
+    void readsGoToDatabaseWhileReplicaLags() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        //Воспроизведение этой записи зависает, и копия отстаёт дольше max-lag-ms
+        replica.write(() -> null, ignored -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final Film film = filmDbStorage.create(film("Только в БД"));
+
+        assertFalse(replica.isFresh());
+        assertEquals(film.getName(), filmStorage.findById(film.getId()).getName());
+        assertThrows(ObjectNotFoundException.class, () -> replica.films().findById(film.getId()));
+
+        release.countDown();
+        final Film replicated = filmStorage.create(film("Через копию"));
+        assertTrue(replica.isFresh());
+        assertEquals(replicated.getName(), filmStorage.findById(replicated.getId()).getName());
+    }
+
+    //Лайк и удаление его пользователя берут блокировку пользователя, поэтому в журнале идут в порядке БД
+    //и лайк удалённого пользователя не остаётся в копии
+    @Test
+    void userDeletesAndLikesStayInOrder() throws Exception {
+        final List<Film> films = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            films.add(filmStorage.create(film("Фильм " + i)));
+        }
+        for (int round = 0; round < 20; round++) {
+            final User user = userStorage.create(user("user" + round));
+            final CountDownLatch started = new CountDownLatch(1);
+            final Thread liker = new Thread(() -> {
+                started.countDown();
+                for (Film film : films) {
+                    try {
+                        filmStorage.addLike(film.getId(), user.getId());
+                    } catch (DataAccessException e) {
+                        //Пользователь уже удалён
+                    }
+                }
+            });
+            liker.start();
+            started.await();
+            userStorage.delete(user.getId());
+            liker.join();
+        }
+
+        assertEquals(filmDbStorage.findLikesCount(), replica.films().findLikesCount());
+    }
+
+    //Перечитывание собирает новую копию: читатели видят прежнюю целиком, а не очищенную
+    @Test
+    void reloadNeverExposesEmptyCopy() throws InterruptedException {
+        final int count = 200;
+        for (int i = 0; i < count; i++) {
+            filmStorage.create(film("Фильм " + i));
+        }
+        final AtomicBoolean reloading = new AtomicBoolean(true);
+        final AtomicInteger smallest = new AtomicInteger(count);
+        final Thread reader = new Thread(() -> {
+            while (reloading.get()) {
+                smallest.accumulateAndGet(replica.films().findAll().size(), Math::min);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 10; i++) {
+            replica.reload();
+        }
+        reloading.set(false);
+        reader.join();
+
+        assertEquals(count, smallest.get());
+        assertEquals(count, replica.films().findAll().size());
+    }
+
+    private static User user(String login) {
+        return new User(0, login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1));
+    }
+
+    private static Film film(String name) {
+        return new Film(0, name, "Описание", LocalDate.of(2000, 1, 1), 100, new MPARating(1, null),
+                List.of(new Genre(2, null)));
+    }
+
+    private static List<Long> ids(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toList());
+    }
+}